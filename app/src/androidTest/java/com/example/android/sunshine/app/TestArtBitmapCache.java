@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+public class TestArtBitmapCache extends AndroidTestCase {
+    public static final String LOG_TAG = TestArtBitmapCache.class.getSimpleName();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ArtBitmapCache.clear();
+    }
+
+    /*
+        This test checks that art is decoded at the requested size, once per size, and compares
+        the cost with decoding the full resource the way the services used to.
+     */
+    public void testDecodesOncePerSize() {
+        int size = mContext.getResources().getDimensionPixelSize(R.dimen.list_icon);
+
+        long start = System.nanoTime();
+        Bitmap first = ArtBitmapCache.get(mContext, null, R.drawable.art_storm, size, size);
+        long firstNanos = System.nanoTime() - start;
+        assertNotNull("Error: the art could not be decoded", first);
+        assertTrue("Error: the art is larger than requested: " + first.getWidth() + "x" +
+                first.getHeight(), first.getWidth() <= size && first.getHeight() <= size);
+
+        start = System.nanoTime();
+        Bitmap second = ArtBitmapCache.get(mContext, null, R.drawable.art_storm, size, size);
+        long secondNanos = System.nanoTime() - start;
+        assertSame("Error: the art was decoded again", first, second);
+
+        Bitmap other = ArtBitmapCache.get(mContext, null, R.drawable.art_storm, size / 2, size / 2);
+        assertNotSame("Error: different sizes share a bitmap", first, other);
+
+        start = System.nanoTime();
+        Bitmap full = BitmapFactory.decodeResource(mContext.getResources(), R.drawable.art_storm);
+        long fullNanos = System.nanoTime() - start;
+
+        Log.i(LOG_TAG, "art_storm at " + size + "px: first " + (firstNanos / 1000) + " us, cached " +
+                (secondNanos / 1000) + " us, " + (first.getRowBytes() * first.getHeight()) +
+                " bytes; full decode " + (fullNanos / 1000) + " us, " +
+                (full.getRowBytes() * full.getHeight()) + " bytes");
+    }
+
+    public void testFallsBackToResource() {
+        int size = mContext.getResources().getDimensionPixelSize(R.dimen.list_icon);
+        Bitmap bitmap = ArtBitmapCache.get(mContext, "file:///does/not/exist.png",
+                R.drawable.art_clear, size, size);
+        assertSame("Error: a missing image did not fall back to the resource",
+                ArtBitmapCache.get(mContext, null, R.drawable.art_clear, size, size), bitmap);
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.text.SimpleDateFormat;
+
+public class TestDateFormatCache extends AndroidTestCase {
+    public static final String LOG_TAG = TestDateFormatCache.class.getSimpleName();
+
+    static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000;
+    static final int FIRST_DAY = -30;
+    static final int LAST_DAY = 400;
+    static final int BENCHMARK_ROUNDS = 20;
+
+    /*
+        This test checks the cached helpers against the ones they replaced, for stored dates
+        (local midnight) and for times later in the day, over more than a year so that
+        daylight saving changes are crossed.
+     */
+    public void testMatchesUncachedFormatting() {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        for (int i = FIRST_DAY; i <= LAST_DAY; i++) {
+            long date = WeatherContract.normalizeDate(today + i * DAY_IN_MILLIS);
+            for (long time : new long[]{date, date + 13 * 60 * 60 * 1000}) {
+                assertEquals("Error: wrong friendly day for " + time,
+                        legacyFriendlyDayString(mContext, time, false),
+                        Utility.getFriendlyDayString(mContext, time, false));
+                assertEquals("Error: wrong long friendly day for " + time,
+                        legacyFriendlyDayString(mContext, time, true),
+                        Utility.getFriendlyDayString(mContext, time, true));
+                assertEquals("Error: wrong full friendly day for " + time,
+                        legacyFullFriendlyDayString(mContext, time),
+                        Utility.getFullFriendlyDayString(mContext, time));
+                assertEquals("Error: wrong day name for " + time,
+                        legacyDayName(mContext, time), Utility.getDayName(mContext, time));
+                assertEquals("Error: wrong month and day for " + time,
+                        legacyFormattedMonthDay(mContext, time),
+                        Utility.getFormattedMonthDay(mContext, time));
+            }
+        }
+    }
+
+    public void testInvalidate() {
+        long today = System.currentTimeMillis();
+        String before = Utility.getFormattedMonthDay(mContext, today);
+        DateFormatCache.invalidate();
+        assertEquals("Error: the rebuilt cache formats differently",
+                before, Utility.getFormattedMonthDay(mContext, today));
+    }
+
+    /*
+        Formats a two week forecast the way the list does, repeatedly, and logs the number of
+        allocations with and without the cache.  Allocation counting is not supported on every
+        runtime, so the comparison is only asserted when counts are available.
+     */
+    @SuppressWarnings("deprecation")
+    public void testAllocationBenchmark() {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        long[] dates = new long[14];
+        for (int i = 0; i < dates.length; i++) {
+            dates[i] = WeatherContract.normalizeDate(today + i * DAY_IN_MILLIS);
+        }
+        // Fill the cache, so only steady state is measured
+        for (long date : dates) Utility.getFriendlyDayString(mContext, date, true);
+
+        Debug.startAllocCounting();
+        try {
+            Debug.resetThreadAllocCount();
+            long start = System.nanoTime();
+            for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+                for (long date : dates) legacyFriendlyDayString(mContext, date, date == today);
+            }
+            long legacyNanos = System.nanoTime() - start;
+            int legacyAllocs = Debug.getThreadAllocCount();
+
+            Debug.resetThreadAllocCount();
+            start = System.nanoTime();
+            for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+                for (long date : dates) Utility.getFriendlyDayString(mContext, date, date == today);
+            }
+            long cachedNanos = System.nanoTime() - start;
+            int cachedAllocs = Debug.getThreadAllocCount();
+
+            int calls = BENCHMARK_ROUNDS * dates.length;
+            Log.i(LOG_TAG, "per friendly day string: uncached " + (legacyNanos / calls) + " ns, " +
+                    ((float) legacyAllocs / calls) + " allocations; cached " +
+                    (cachedNanos / calls) + " ns, " + ((float) cachedAllocs / calls) +
+                    " allocations");
+            if (legacyAllocs > 0) {
+                assertTrue("Error: the cache should allocate less than formatting",
+                        cachedAllocs < legacyAllocs);
+            }
+        } finally {
+            Debug.stopAllocCounting();
+        }
+    }
+
+    // The helpers as they were before DateFormatCache, kept as the reference
+
+    private static String legacyFriendlyDayString(Context context, long dateInMillis, boolean displayLongToday) {
+        // The day string for forecast uses the following logic:
+        // For today: "Today, June 8"
+        // For tomorrow:  "Tomorrow"
+        // For the next 5 days: "Wednesday" (just the day name)
+        // For all days after that: "Mon Jun 8"
+
+        Time time = new Time();
+        time.setToNow();
+        long currentTime = System.currentTimeMillis();
+        int julianDay = Time.getJulianDay(dateInMillis, time.gmtoff);
+        int currentJulianDay = Time.getJulianDay(currentTime, time.gmtoff);
+
+        // If the date we're building the String for is today's date, the format
+        // is "Today, June 24"
+        if (displayLongToday && julianDay == currentJulianDay) {
+            String today = context.getString(R.string.today);
+            int formatId = R.string.format_full_friendly_date;
+            return String.format(context.getString(
+                    formatId,
+                    today,
+                    legacyFormattedMonthDay(context, dateInMillis)));
+        } else if ( julianDay < currentJulianDay + 7 ) {
+            // If the input date is less than a week in the future, just return the day name.
+            return legacyDayName(context, dateInMillis);
+        } else {
+            // Otherwise, use the form "Mon Jun 3"
+            SimpleDateFormat shortenedDateFormat = new SimpleDateFormat("EEE MMM dd");
+            return shortenedDateFormat.format(dateInMillis);
+        }
+    }
+
+    private static String legacyFullFriendlyDayString(Context context, long dateInMillis) {
+
+        String day = legacyDayName(context, dateInMillis);
+        int formatId = R.string.format_full_friendly_date;
+        return String.format(context.getString(
+                formatId,
+                day,
+                legacyFormattedMonthDay(context, dateInMillis)));
+    }
+
+    private static String legacyDayName(Context context, long dateInMillis) {
+        // If the date is today, return the localized version of "Today" instead of the actual
+        // day name.
+
+        Time t = new Time();
+        t.setToNow();
+        int julianDay = Time.getJulianDay(dateInMillis, t.gmtoff);
+        int currentJulianDay = Time.getJulianDay(System.currentTimeMillis(), t.gmtoff);
+        if (julianDay == currentJulianDay) {
+            return context.getString(R.string.today);
+        } else if ( julianDay == currentJulianDay +1 ) {
+            return context.getString(R.string.tomorrow);
+        } else {
+            Time time = new Time();
+            time.setToNow();
+            // Otherwise, the format is just the day of the week (e.g "Wednesday".
+            SimpleDateFormat dayFormat = new SimpleDateFormat("EEEE");
+            return dayFormat.format(dateInMillis);
+        }
+    }
+
+    private static String legacyFormattedMonthDay(Context context, long dateInMillis ) {
+        Time time = new Time();
+        time.setToNow();
+        SimpleDateFormat dbDateFormat = new SimpleDateFormat(Utility.DATE_FORMAT);
+        SimpleDateFormat monthDayFormat = new SimpleDateFormat("MMMM dd");
+        String monthDayString = monthDayFormat.format(dateInMillis);
+        return monthDayString;
+    }
+}
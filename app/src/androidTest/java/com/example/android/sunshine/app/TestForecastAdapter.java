@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.view.View;
+import android.widget.AbsListView;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+public class TestForecastAdapter extends AndroidTestCase {
+
+    private static final long TODAY = 1419033600000L;
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000;
+    // Five full pages and a short one that ends the list
+    private static final int TOTAL_DAYS = ForecastAdapter.PAGE_SIZE * 5 + 7;
+
+    private ForecastAdapter mAdapter;
+    // Pages requested and not yet delivered
+    private final List<Integer> mRequestedPages = new ArrayList<Integer>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mAdapter = new ForecastAdapter(mContext, null, new View(mContext),
+                AbsListView.CHOICE_MODE_NONE);
+        mAdapter.setPageHandler(new ForecastAdapter.ForecastAdapterPageHandler() {
+            @Override
+            public void onRequestPage(int page, long afterDate, int limit) {
+                mRequestedPages.add(page);
+            }
+        });
+        mAdapter.swapForecast(new ForecastLoader.Result(null,
+                createRows(0, ForecastAdapter.PAGE_SIZE), null, null));
+    }
+
+    private List<ForecastRow> createRows(int start, int end) {
+        ArrayList<ForecastRepository.Day> days = new ArrayList<ForecastRepository.Day>();
+        for (int i = start; i < Math.min(end, TOTAL_DAYS); i++) {
+            days.add(new ForecastRepository.Day(i, TODAY + i * DAY_IN_MILLIS, 800, "Clear",
+                    20, 10, 50, 1000, 2, 90));
+        }
+        return ForecastRow.fromDays(mContext, days, start == 0);
+    }
+
+    /**
+     * Binds position as the list would, answering any page it asks for straight away.
+     */
+    private void scrollTo(int position) {
+        mAdapter.prefetchAround(position);
+        while (!mRequestedPages.isEmpty()) {
+            int page = mRequestedPages.remove(0);
+            int start = page * ForecastAdapter.PAGE_SIZE;
+            mAdapter.setPage(page, createRows(start, start + ForecastAdapter.PAGE_SIZE));
+        }
+    }
+
+    /*
+        This test checks that every item keeps a unique stable id after its page has been
+        evicted, and that each id still leads back to its position.
+     */
+    public void testIdsSurviveEviction() {
+        for (int position = 0; position < mAdapter.getItemCount(); position++) {
+            scrollTo(position);
+        }
+        assertEquals("Error: not every page was loaded", TOTAL_DAYS, mAdapter.getItemCount());
+        assertNull("Error: the test never evicted a page",
+                mAdapter.getRow(ForecastAdapter.PAGE_SIZE + 1));
+
+        HashSet<Long> ids = new HashSet<Long>();
+        for (int position = 0; position < mAdapter.getItemCount(); position++) {
+            long id = mAdapter.getItemId(position);
+            assertTrue("Error: position " + position + " has no id", id != RecyclerView.NO_ID);
+            assertTrue("Error: position " + position + " shares its id", ids.add(id));
+            assertEquals("Error: the id isn't the row's date",
+                    TODAY + position * DAY_IN_MILLIS, id);
+            assertEquals("Error: the id doesn't lead back to its position",
+                    position, mAdapter.getPositionForItemId(id));
+        }
+
+        // Scrolling back re-queries the evicted page without changing its ids
+        scrollTo(ForecastAdapter.PAGE_SIZE + 1);
+        assertNotNull(mAdapter.getRow(ForecastAdapter.PAGE_SIZE + 1));
+        assertEquals(TODAY + (ForecastAdapter.PAGE_SIZE + 1) * DAY_IN_MILLIS,
+                mAdapter.getItemId(ForecastAdapter.PAGE_SIZE + 1));
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.os.Handler;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+public class TestForecastRepository extends AndroidTestCase {
+
+    private static final String TEST_LOCATION = "99705";
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final int TEST_DAYS = 3;
+
+    private String mLocation;
+    private long mLocationId;
+    private ForecastRepository mRepository;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mLocation = Utility.getPreferredLocation(mContext);
+        setPreferredLocation(TEST_LOCATION);
+        deleteTestRows();
+
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, TEST_LOCATION);
+        location.put(LocationEntry.COLUMN_CITY_NAME, "North Pole");
+        location.put(LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        location.put(LocationEntry.COLUMN_COORD_LONG, -147.353);
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, location);
+        mLocationId = ContentUris.parseId(locationUri);
+
+        ContentValues[] days = new ContentValues[TEST_DAYS];
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        for (int i = 0; i < TEST_DAYS; i++) {
+            days[i] = createWeatherValues(today + i * DAY_IN_MILLIS, 800 + i);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, days);
+
+        mRepository = ForecastRepository.getInstance(mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteTestRows();
+        setPreferredLocation(mLocation);
+        super.tearDown();
+    }
+
+    /*
+        This test checks that the forecast list and the detail view are served from the same
+        snapshot until the weather table changes.
+     */
+    public void testSnapshotServedFromMemory() {
+        waitForInvalidation();
+        ForecastRepository.Snapshot snapshot = mRepository.getForecast();
+        assertEquals("Error: the snapshot does not hold every test day",
+                TEST_DAYS, snapshot.days.size());
+        assertEquals("Error: the snapshot is for the wrong location",
+                TEST_LOCATION, snapshot.locationSetting);
+        assertEquals("Error: the snapshot is missing the location's coordinates",
+                64.7488, Double.parseDouble(snapshot.coordLat), 1e-4);
+
+        assertSame("Error: a second read queried again", snapshot, mRepository.getForecast());
+
+        ForecastRepository.Day tomorrow = snapshot.days.get(1);
+        assertSame("Error: the detail day was not served from the snapshot", tomorrow,
+                mRepository.getDay(TEST_LOCATION, tomorrow.date));
+        assertEquals("Error: the day has the wrong condition", 801, tomorrow.weatherId);
+    }
+
+    /*
+        This test checks that a provider change drops the snapshot and tells listeners, so the
+        next read reflects it.
+     */
+    public void testChangeInvalidatesSnapshot() {
+        waitForInvalidation();
+        final ForecastRepository.Snapshot before = mRepository.getForecast();
+        final boolean[] notified = new boolean[1];
+        final ForecastRepository.Listener listener = new ForecastRepository.Listener() {
+            @Override
+            public void onForecastChanged() {
+                notified[0] = true;
+            }
+        };
+        registerListener(listener);
+        try {
+            long date = before.days.get(0).date;
+            ContentValues values = createWeatherValues(date, 200);
+            mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                    new ContentValues[]{values});
+
+            new PollingCheck(5000) {
+                @Override
+                protected boolean check() {
+                    return notified[0];
+                }
+            }.run();
+
+            ForecastRepository.Snapshot after = mRepository.getForecast();
+            assertNotSame("Error: the snapshot survived a provider change", before, after);
+            assertEquals("Error: the new snapshot does not reflect the change",
+                    200, after.days.get(0).weatherId);
+        } finally {
+            unregisterListener(listener);
+        }
+    }
+
+    /*
+        Lets the notifications from setUp's inserts reach the repository, so they don't drop a
+        snapshot taken by the test.
+     */
+    private void waitForInvalidation() {
+        final boolean[] notified = new boolean[1];
+        final ForecastRepository.Listener listener = new ForecastRepository.Listener() {
+            @Override
+            public void onForecastChanged() {
+                notified[0] = true;
+            }
+        };
+        registerListener(listener);
+        mContext.getContentResolver().notifyChange(WeatherEntry.CONTENT_URI, null);
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return notified[0];
+            }
+        }.run();
+        unregisterListener(listener);
+    }
+
+    // Listeners are kept on the main thread
+    private void registerListener(final ForecastRepository.Listener listener) {
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mRepository.registerListener(listener);
+            }
+        });
+    }
+
+    private void unregisterListener(final ForecastRepository.Listener listener) {
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mRepository.unregisterListener(listener);
+            }
+        });
+    }
+
+    private void runOnMainSync(final Runnable runnable) {
+        final boolean[] done = new boolean[1];
+        new Handler(mContext.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                runnable.run();
+                done[0] = true;
+            }
+        });
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return done[0];
+            }
+        }.run();
+    }
+
+    private ContentValues createWeatherValues(long date, int weatherId) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherEntry.COLUMN_LOC_KEY, mLocationId);
+        values.put(WeatherEntry.COLUMN_DATE, date);
+        values.put(WeatherEntry.COLUMN_DEGREES, 1.1);
+        values.put(WeatherEntry.COLUMN_HUMIDITY, 1.2);
+        values.put(WeatherEntry.COLUMN_PRESSURE, 1.3);
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, 75);
+        values.put(WeatherEntry.COLUMN_MIN_TEMP, 65);
+        values.put(WeatherEntry.COLUMN_SHORT_DESC, "Asteroids");
+        values.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+        values.put(WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+        return values;
+    }
+
+    private void deleteTestRows() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_LOC_KEY + " IN (SELECT " + LocationEntry._ID + " FROM "
+                        + LocationEntry.TABLE_NAME + " WHERE "
+                        + LocationEntry.COLUMN_LOCATION_SETTING + " = ?)",
+                new String[]{TEST_LOCATION});
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI,
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?", new String[]{TEST_LOCATION});
+    }
+
+    // The settings snapshot follows the preference on the main thread, so wait for it
+    private void setPreferredLocation(final String location) {
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(mContext.getString(R.string.pref_location_key), location).commit();
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return location.equals(Utility.getPreferredLocation(mContext));
+            }
+        }.run();
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class TestForecastSnapshotFile extends AndroidTestCase {
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    @Override
+    protected void tearDown() throws Exception {
+        ForecastSnapshotFile.delete(mContext);
+        super.tearDown();
+    }
+
+    /*
+        This test checks that everything written comes back, with the list's text formatted.
+     */
+    public void testRoundTrip() {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        ArrayList<ForecastRepository.Day> days = new ArrayList<ForecastRepository.Day>();
+        for (int i = 0; i < ForecastSnapshotFile.DAYS; i++) {
+            days.add(new ForecastRepository.Day(i + 1, today + i * DAY_IN_MILLIS, 800 + i % 5,
+                    "Clear", 20.5 + i, 10.25 - i, 50f, 1010.5f, 3.5f, 270f));
+        }
+        ForecastSnapshotFile.write(mContext, new ForecastRepository.Snapshot("99705", today,
+                Collections.unmodifiableList(days), true, "64.7488", "-147.353"));
+
+        ForecastSnapshotFile.Contents contents = ForecastSnapshotFile.read(mContext);
+        assertNotNull("Error: the snapshot file could not be read back", contents);
+        ForecastRepository.Snapshot snapshot = contents.snapshot;
+        assertEquals("99705", snapshot.locationSetting);
+        assertEquals(today, snapshot.startDate);
+        assertTrue(snapshot.complete);
+        assertEquals("64.7488", snapshot.coordLat);
+        assertEquals(days.size(), snapshot.days.size());
+        for (int i = 0; i < days.size(); i++) {
+            ForecastRepository.Day expected = days.get(i);
+            ForecastRepository.Day actual = snapshot.days.get(i);
+            assertEquals(expected.date, actual.date);
+            assertEquals(expected.weatherId, actual.weatherId);
+            assertEquals(expected.high, actual.high);
+            assertEquals(expected.pressure, actual.pressure);
+            assertEquals("Error: a stored temperature doesn't match formatting it now",
+                    Utility.formatTemperature(mContext, expected.high),
+                    contents.getHighText(mContext, i));
+        }
+        assertEquals("Error: today is not the first day", 0, contents.getTodayIndex());
+
+        List<ForecastRow> stored = snapshot.texts.toRows(mContext, snapshot.days);
+        assertNotNull("Error: the stored rows were not formatted for now", stored);
+        List<ForecastRow> formatted = ForecastRow.fromDays(mContext, days, true);
+        for (int i = 0; i < days.size(); i++) {
+            assertEquals(formatted.get(i).id, stored.get(i).id);
+            assertTrue("Error: a stored row doesn't match formatting it now",
+                    Arrays.equals(formatted.get(i).getTexts(), stored.get(i).getTexts()));
+        }
+    }
+
+    /*
+        This test checks that a damaged file reads as missing rather than throwing.
+     */
+    public void testTruncatedFileIsIgnored() throws Exception {
+        File file = new File(mContext.getFilesDir(), "forecast_snapshot.bin");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[]{0x53, 0x4e, 0x41, 0x50, 0, 0});
+        out.close();
+        assertNull("Error: a truncated file was read", ForecastSnapshotFile.read(mContext));
+
+        ForecastSnapshotFile.delete(mContext);
+        assertNull("Error: a deleted file was read", ForecastSnapshotFile.read(mContext));
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+
+import java.util.ArrayList;
+
+public class TestItemChoiceManager extends AndroidTestCase {
+
+    private IdAdapter mAdapter;
+    private ItemChoiceManager mICM;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mAdapter = new IdAdapter();
+        for (long id = 100; id < 110; id++) mAdapter.mIds.add(id);
+        mICM = new ItemChoiceManager(mAdapter);
+        mICM.setChoiceMode(AbsListView.CHOICE_MODE_SINGLE);
+        check(5);
+    }
+
+    /*
+        This test checks that the selection follows its item through fine-grained
+        notifications, the way DiffUtil reports a reload.
+     */
+    public void testSelectionFollowsRangeNotifications() {
+        mAdapter.mIds.add(0, 99L);
+        mAdapter.notifyItemInserted(0);
+        assertSelected(6, 105);
+
+        mAdapter.mIds.remove(0);
+        mAdapter.mIds.remove(0);
+        mAdapter.notifyItemRangeRemoved(0, 2);
+        assertSelected(4, 105);
+
+        mAdapter.mIds.add(mAdapter.mIds.remove(4));
+        mAdapter.notifyItemMoved(4, mAdapter.mIds.size() - 1);
+        assertSelected(mAdapter.mIds.size() - 1, 105);
+
+        mAdapter.mIds.remove(mAdapter.mIds.size() - 1);
+        mAdapter.notifyItemRemoved(mAdapter.mIds.size());
+        assertEquals("Error: a removed item is still selected",
+                RecyclerView.NO_POSITION, mICM.getSelectedItemPosition());
+    }
+
+    public void testSelectionFoundByIdAfterDataSetChange() {
+        for (int i = 0; i < 50; i++) mAdapter.mIds.add(0, 1000L + i);
+        mAdapter.notifyDataSetChanged();
+        assertSelected(55, 105);
+
+        mAdapter.mIds.remove(55);
+        mAdapter.notifyDataSetChanged();
+        assertEquals("Error: a removed item is still selected",
+                RecyclerView.NO_POSITION, mICM.getSelectedItemPosition());
+    }
+
+    private void check(int position) {
+        mICM.mCheckStates.put(position, true);
+        mICM.mCheckedIdStates.put(mAdapter.getItemId(position), position);
+    }
+
+    private void assertSelected(int position, long id) {
+        assertEquals("Error: the selection did not follow its item",
+                position, mICM.getSelectedItemPosition());
+        assertEquals("Error: the selection's last known position is wrong",
+                position, (int) mICM.mCheckedIdStates.get(id));
+    }
+
+    /**
+     * Looks ids up by scanning, so the test doesn't depend on any adapter's index.
+     */
+    static class IdAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
+            implements ItemChoiceManager.ItemIdLookup {
+        final ArrayList<Long> mIds = new ArrayList<Long>();
+
+        IdAdapter() {
+            setHasStableIds(true);
+        }
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int getItemCount() {
+            return mIds.size();
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return mIds.get(position);
+        }
+
+        @Override
+        public int getPositionForItemId(long id) {
+            int position = mIds.indexOf(id);
+            return position < 0 ? RecyclerView.NO_POSITION : position;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TestSettingsSnapshot extends AndroidTestCase {
+
+    private String mUnits;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mUnits = PreferenceManager.getDefaultSharedPreferences(mContext).getString(
+                mContext.getString(R.string.pref_units_key),
+                mContext.getString(R.string.pref_units_metric));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(mContext.getString(R.string.pref_units_key), mUnits).commit();
+        super.tearDown();
+    }
+
+    /*
+        This test checks that a preference change replaces the snapshot with a newer version
+        that reflects it.  Listeners are called on the main thread, so the change is polled for.
+     */
+    public void testSnapshotFollowsPreferences() {
+        final SettingsSnapshot before = SettingsSnapshot.get(mContext);
+        assertSame("Error: the snapshot changed without a preference change",
+                before, SettingsSnapshot.get(mContext));
+
+        final String units = mContext.getString(before.isMetric
+                ? R.string.pref_units_imperial : R.string.pref_units_metric);
+        SharedPreferences.Editor editor =
+                PreferenceManager.getDefaultSharedPreferences(mContext).edit();
+        editor.putString(mContext.getString(R.string.pref_units_key), units);
+        editor.commit();
+
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return SettingsSnapshot.get(mContext).version > before.version;
+            }
+        }.run();
+
+        assertEquals("Error: the snapshot does not reflect the new units",
+                !before.isMetric, Utility.isMetric(mContext));
+    }
+
+    /*
+        This test checks that writing a preference the snapshot doesn't hold, as the sync does
+        with the location status on every run, leaves the snapshot alone.
+     */
+    public void testUnrelatedPreferenceIsIgnored() throws Exception {
+        // Let any change still being delivered from an earlier test land first
+        waitForMainThread();
+        SettingsSnapshot before = SettingsSnapshot.get(mContext);
+
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String statusKey = mContext.getString(R.string.pref_location_status_key);
+        int status = prefs.getInt(statusKey, 0);
+        prefs.edit().putInt(statusKey, status + 1).commit();
+        prefs.edit().putInt(statusKey, status).commit();
+        waitForMainThread();
+
+        assertSame("Error: the location status rebuilt the snapshot",
+                before, SettingsSnapshot.get(mContext));
+    }
+
+    /**
+     * Returns once everything already posted to the main thread, including preference
+     * listener calls, has run.
+     */
+    private static void waitForMainThread() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+}
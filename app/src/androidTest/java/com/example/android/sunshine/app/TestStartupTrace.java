@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+public class TestStartupTrace extends ActivityInstrumentationTestCase2<MainActivity> {
+    private static final String LOG_TAG = TestStartupTrace.class.getSimpleName();
+
+    public TestStartupTrace() {
+        super(MainActivity.class);
+    }
+
+    /*
+        This test launches MainActivity and reports how long its first frame and first forecast
+        row took.  The row only appears if there is stored weather, so only the frame is
+        required.
+     */
+    public void testColdStartIsTraced() {
+        getActivity();
+        new PollingCheck(10000) {
+            @Override
+            protected boolean check() {
+                return StartupTrace.getFirstFrameMillis() >= 0;
+            }
+        }.run();
+        getInstrumentation().waitForIdleSync();
+
+        long firstRow = StartupTrace.getFirstForecastRowMillis();
+        Log.i(LOG_TAG, "First frame " + StartupTrace.getFirstFrameMillis()
+                + " ms, first forecast row " + firstRow + " ms");
+        if (firstRow >= 0) {
+            assertTrue("Error: a row was traced before the first frame",
+                    firstRow >= StartupTrace.getFirstFrameMillis());
+        }
+    }
+
+    /*
+        This test checks that deferred work waits for a frame instead of running immediately.
+     */
+    public void testWorkRunsAfterFrame() throws Throwable {
+        final MainActivity activity = getActivity();
+        final boolean[] ran = new boolean[1];
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                StartupTrace.runAfterFirstFrame(activity, new Runnable() {
+                    @Override
+                    public void run() {
+                        ran[0] = true;
+                    }
+                });
+                activity.getWindow().getDecorView().invalidate();
+                assertFalse("Error: the work ran before a frame", ran[0]);
+            }
+        });
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return ran[0];
+            }
+        }.run();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import java.util.Arrays;
+
+public class TestWearForecast extends AndroidTestCase {
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final long TODAY = 1419033600000L;
+
+    private static WearForecast createForecast(double todaysHigh) {
+        WearForecast forecast = new WearForecast(false, WearForecast.MAX_DAYS);
+        for (int i = 0; i < WearForecast.MAX_DAYS; i++) {
+            forecast.setDay(i, TODAY + i * DAY_IN_MILLIS, 800 + i, i == 0 ? todaysHigh : 20.5,
+                    -3.26);
+        }
+        return forecast;
+    }
+
+    /*
+        This test checks that a payload decodes to what was encoded, to a tenth of a degree.
+     */
+    public void testRoundTrip() {
+        byte[] payload = createForecast(21.04).toBytes();
+        WearForecast forecast = WearForecast.fromBytes(payload);
+        assertNotNull("Error: the payload could not be decoded", forecast);
+        assertFalse(forecast.isMetric);
+        assertEquals(WearForecast.MAX_DAYS, forecast.getDayCount());
+        assertEquals(TODAY + DAY_IN_MILLIS, forecast.getDate(1));
+        assertEquals(801, forecast.getWeatherId(1));
+        assertEquals(21.0, forecast.getHigh(0), 1e-9);
+        assertEquals(-3.3, forecast.getLow(0), 1e-9);
+        assertEquals("70\u00B0", forecast.formatTemperature(mContext, forecast.getHigh(0)));
+    }
+
+    /*
+        This test checks that the same forecast always hashes the same, and a different one
+        doesn't, since the sync adapter relies on that to skip sending.
+     */
+    public void testHashFollowsContent() {
+        byte[] first = createForecast(21.0).toBytes();
+        byte[] second = createForecast(21.0).toBytes();
+        assertTrue(Arrays.equals(first, second));
+        assertEquals(WearForecast.hash(first), WearForecast.hash(second));
+        assertTrue("Error: a changed high didn't change the hash",
+                WearForecast.hash(first) != WearForecast.hash(createForecast(22.0).toBytes()));
+    }
+
+    public void testFindDay() {
+        WearForecast forecast = createForecast(21.0);
+        assertEquals(-1, forecast.findDay(TODAY - 1));
+        assertEquals(0, forecast.findDay(TODAY));
+        assertEquals(1, forecast.findDay(TODAY + DAY_IN_MILLIS + 5));
+        long lastDay = TODAY + (WearForecast.MAX_DAYS - 1) * DAY_IN_MILLIS;
+        assertEquals(WearForecast.MAX_DAYS - 1, forecast.findDay(lastDay + DAY_IN_MILLIS - 1));
+        assertEquals(-1, forecast.findDay(lastDay + DAY_IN_MILLIS));
+    }
+
+    public void testDamagedPayloadIsIgnored() {
+        byte[] payload = createForecast(21.0).toBytes();
+        assertNull(WearForecast.fromBytes(Arrays.copyOf(payload, payload.length - 1)));
+        assertNull(WearForecast.fromBytes(null));
+    }
+
+    public void testRefreshRequestNamesHeldForecast() {
+        WearForecast held = createForecast(21.0);
+        byte[] request = WearForecast.createRefreshRequest(held);
+        assertTrue(WearForecast.isHeld(request, createForecast(21.0).toBytes()));
+        assertFalse(WearForecast.isHeld(request, createForecast(22.0).toBytes()));
+        assertFalse("Error: a watch holding nothing holds everything",
+                WearForecast.isHeld(WearForecast.createRefreshRequest(null), held.toBytes()));
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+public class TestWeatherConditions extends AndroidTestCase {
+    public static final String LOG_TAG = TestWeatherConditions.class.getSimpleName();
+
+    // Past both ends of the tables
+    static final int FIRST_CODE = -100;
+    static final int LAST_CODE = WeatherConditions.CODE_LIMIT + 100;
+    static final int BENCHMARK_ROUNDS = 200;
+
+    // The codes that had a case of their own in getStringForWeatherCondition's switch.  521
+    // and 522 have strings but were never in it, so they show as unknown.
+    static final int[] LEGACY_STRING_CODES = {
+            500, 501, 502, 503, 504, 511, 520, 531, 600, 601, 602, 611, 612, 615, 616, 620, 621,
+            622, 701, 711, 721, 731, 741, 751, 761, 762, 771, 781, 800, 801, 802, 803, 804, 900,
+            901, 902, 903, 904, 905, 906, 951, 952, 953, 954, 955, 956, 957, 958, 959, 960, 961,
+            962};
+
+    /*
+        This test checks every code, including ones outside the tables, against the if-chains
+        the tables replaced.
+     */
+    public void testTablesMatchLegacyChains() {
+        for (int code = FIRST_CODE; code <= LAST_CODE; code++) {
+            assertEquals("Error: wrong icon for " + code,
+                    legacyIconResource(code), Utility.getIconResourceForWeatherCondition(code));
+            assertEquals("Error: wrong art for " + code,
+                    legacyArtResource(code), Utility.getArtResourceForWeatherCondition(code));
+            assertEquals("Error: wrong art name for " + code,
+                    legacyArtName(code), WeatherConditions.getArtName(code));
+            assertEquals("Error: wrong image for " + code,
+                    legacyImageUrl(code), Utility.getImageUrlForWeatherCondition(code));
+            assertEquals("Error: wrong description for " + code,
+                    legacyString(code), Utility.getStringForWeatherCondition(mContext, code));
+        }
+    }
+
+    /*
+        Compares the chains with the tables over every code.  Only a loose bound is asserted;
+        the log has the numbers.
+     */
+    public void testLookupBenchmark() {
+        int codes = LAST_CODE - FIRST_CODE + 1;
+        long sink = 0;
+        // Warm up the JIT
+        for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+            for (int code = FIRST_CODE; code <= LAST_CODE; code++) {
+                sink += legacyIconResource(code) + legacyArtResource(code);
+                sink += WeatherConditions.getIconResource(code) + WeatherConditions.getArtResource(code);
+            }
+        }
+
+        long start = System.nanoTime();
+        for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+            for (int code = FIRST_CODE; code <= LAST_CODE; code++) {
+                sink += legacyIconResource(code) + legacyArtResource(code);
+                if (legacyArtName(code) != null) sink++;
+            }
+        }
+        long chainNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+            for (int code = FIRST_CODE; code <= LAST_CODE; code++) {
+                sink += WeatherConditions.getIconResource(code) + WeatherConditions.getArtResource(code);
+                if (WeatherConditions.getArtName(code) != null) sink++;
+            }
+        }
+        long tableNanos = System.nanoTime() - start;
+
+        long lookups = (long) BENCHMARK_ROUNDS * codes;
+        Log.i(LOG_TAG, "icon, art and art name per code: chains " + (chainNanos * 1000 / lookups) +
+                " ps, tables " + (tableNanos * 1000 / lookups) + " ps (" + sink + ")");
+        assertTrue("Error: the tables are slower than the chains",
+                tableNanos < chainNanos * 2);
+    }
+
+    private String legacyString(int weatherId) {
+        int stringId = 0;
+        if (weatherId >= 200 && weatherId <= 232) {
+            stringId = R.string.condition_2xx;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            stringId = R.string.condition_3xx;
+        } else {
+            for (int code : LEGACY_STRING_CODES) {
+                if (code == weatherId) {
+                    stringId = mContext.getResources().getIdentifier("condition_" + code,
+                            "string", mContext.getPackageName());
+                }
+            }
+        }
+        return stringId == 0 ? mContext.getString(R.string.condition_unknown, weatherId)
+                : mContext.getString(stringId);
+    }
+
+    // The if-chains WeatherConditions replaced, kept as the reference for its tables
+
+    private static int legacyIconResource(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.ic_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.ic_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.ic_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.ic_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.ic_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.ic_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.ic_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.ic_cloudy;
+        }
+        return -1;
+    }
+
+    private static int legacyArtResource(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.art_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.art_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.art_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.art_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.art_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.art_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.art_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.art_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.art_clouds;
+        }
+        return -1;
+    }
+
+    private static String legacyArtName(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return "storm";
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return "light_rain";
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return "rain";
+        } else if (weatherId == 511) {
+            return "snow";
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return "rain";
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return "snow";
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return "fog";
+        } else if (weatherId == 761 || weatherId == 781) {
+            return "storm";
+        } else if (weatherId == 800) {
+            return "clear";
+        } else if (weatherId == 801) {
+            return "light_clouds";
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return "clouds";
+        }
+        return null;
+    }
+
+    private static String legacyImageUrl(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg";
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg";
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId == 511) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg";
+        } else if (weatherId == 761 || weatherId == 781) {
+            return "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
+        } else if (weatherId == 800) {
+            return "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg";
+        } else if (weatherId == 801) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg";
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg";
+        }
+        return null;
+    }
+}
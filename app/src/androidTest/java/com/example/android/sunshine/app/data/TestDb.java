@@ -55,6 +55,9 @@ public class TestDb extends AndroidTestCase {
         final HashSet<String> tableNameHashSet = new HashSet<String>();
         tableNameHashSet.add(WeatherContract.LocationEntry.TABLE_NAME);
         tableNameHashSet.add(WeatherContract.WeatherEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.ArchiveEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.AggregateEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.LocationSearchEntry.TABLE_NAME);
 
         mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
         SQLiteDatabase db = new WeatherDbHelper(
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.io.File;
+import java.util.Random;
+
+public class TestGazetteer extends AndroidTestCase {
+    public static final String LOG_TAG = TestGazetteer.class.getSimpleName();
+
+    static final int SYNTHETIC_CITIES = 50000;
+    static final int QUERIES = 200;
+    static final int BENCHMARK_QUERIES = 20000;
+
+    private File mFile;
+    private Gazetteer mGazetteer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Random random = new Random(42);
+        GazetteerBuilder.City[] cities = new GazetteerBuilder.City[SYNTHETIC_CITIES];
+        for (int i = 0; i < cities.length; i++) {
+            cities[i] = new GazetteerBuilder.City("City " + i + ", XX",
+                    randomLatitude(random), randomLongitude(random));
+        }
+        mFile = new File(mContext.getCacheDir(), "test-gazetteer.bin");
+        GazetteerBuilder.write(cities, mFile);
+        mGazetteer = Gazetteer.open(mFile);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mFile.delete();
+        super.tearDown();
+    }
+
+    /*
+        This test checks the k-d tree against a scan of every city.  Distances are compared
+        rather than indexes since two cities can be equally near.
+     */
+    public void testNearestMatchesBruteForce() {
+        Random random = new Random(7);
+        for (int q = 0; q < QUERIES; q++) {
+            double lat = randomLatitude(random);
+            double lon = randomLongitude(random);
+            int nearest = mGazetteer.findNearest(lat, lon);
+            double best = Double.MAX_VALUE;
+            for (int i = 0; i < mGazetteer.size(); i++) {
+                best = Math.min(best, mGazetteer.distanceKm(i, lat, lon));
+            }
+            assertEquals("Error: the nearest city was not found for " + lat + "," + lon,
+                    best, mGazetteer.distanceKm(nearest, lat, lon), 0.01);
+        }
+    }
+
+    public void testWithinRadiusMatchesBruteForce() {
+        Random random = new Random(11);
+        int[] results = new int[SYNTHETIC_CITIES];
+        for (int q = 0; q < QUERIES; q++) {
+            double lat = randomLatitude(random);
+            double lon = randomLongitude(random);
+            double radius = 50 + random.nextDouble() * 500;
+            int found = mGazetteer.findWithinRadius(lat, lon, radius, results);
+            int expected = 0;
+            for (int i = 0; i < mGazetteer.size(); i++) {
+                // Stay clear of the boundary, where float rounding may go either way
+                if (mGazetteer.distanceKm(i, lat, lon) < radius - 0.01) expected++;
+            }
+            assertTrue("Error: radius search missed cities", found >= expected);
+            for (int i = 0; i < found; i++) {
+                assertTrue("Error: radius search returned a city out of range",
+                        mGazetteer.distanceKm(results[i], lat, lon) <= radius + 0.01);
+            }
+        }
+    }
+
+    public void testBundledGazetteer() {
+        Gazetteer gazetteer = Gazetteer.getInstance(mContext);
+        assertNotNull("Error: the bundled gazetteer could not be built", gazetteer);
+        int nearest = gazetteer.findNearest(51.47, -0.45); // Heathrow
+        assertEquals("Error: wrong nearest city", "London, GB", gazetteer.getName(nearest));
+        nearest = gazetteer.findNearest(-21.1, -175.2); // Tonga, across the date line
+        assertEquals("Error: the date line was not crossed", "Auckland, NZ",
+                gazetteer.getName(nearest));
+    }
+
+    /*
+        Reports lookup latency and the size of the mapping.  Only a loose bound is asserted, so
+        the numbers in the log are what to compare between changes.
+     */
+    public void testLookupBenchmark() {
+        Random random = new Random(3);
+        double[] lats = new double[BENCHMARK_QUERIES];
+        double[] lons = new double[BENCHMARK_QUERIES];
+        for (int i = 0; i < BENCHMARK_QUERIES; i++) {
+            lats[i] = randomLatitude(random);
+            lons[i] = randomLongitude(random);
+        }
+        int[] results = new int[256];
+
+        // Warm up the JIT and page in the mapping
+        for (int i = 0; i < BENCHMARK_QUERIES; i++) {
+            mGazetteer.findNearest(lats[i], lons[i]);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_QUERIES; i++) {
+            mGazetteer.findNearest(lats[i], lons[i]);
+        }
+        long nearestNanos = (System.nanoTime() - start) / BENCHMARK_QUERIES;
+
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_QUERIES; i++) {
+            mGazetteer.findWithinRadius(lats[i], lons[i], 100, results);
+        }
+        long radiusNanos = (System.nanoTime() - start) / BENCHMARK_QUERIES;
+
+        Log.i(LOG_TAG, SYNTHETIC_CITIES + " cities, " + mGazetteer.getMappedSize() +
+                " bytes mapped (" + (mGazetteer.getMappedSize() / SYNTHETIC_CITIES) +
+                " per city); nearest " + nearestNanos + " ns, within 100 km " +
+                radiusNanos + " ns");
+
+        assertTrue("Error: nearest-city lookups are too slow: " + nearestNanos + " ns",
+                nearestNanos < 200 * 1000);
+        assertEquals("Error: the index should add no per-city overhead beyond its record",
+                Gazetteer.HEADER_SIZE + SYNTHETIC_CITIES * Gazetteer.RECORD_SIZE,
+                mGazetteer.getMappedSize() - namesSize());
+    }
+
+    private int namesSize() {
+        int size = 0;
+        for (int i = 0; i < SYNTHETIC_CITIES; i++) {
+            size += mGazetteer.getName(i).length();
+        }
+        return size;
+    }
+
+    // Uniform over the sphere, so the poles are not oversampled
+    private static double randomLatitude(Random random) {
+        return Math.toDegrees(Math.asin(2 * random.nextDouble() - 1));
+    }
+
+    private static double randomLongitude(Random random) {
+        return random.nextDouble() * 360 - 180;
+    }
+}
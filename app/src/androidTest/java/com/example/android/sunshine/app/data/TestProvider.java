@@ -15,6 +15,7 @@
  */
 package com.example.android.sunshine.app.data;
 
+import android.app.SearchManager;
 import android.content.ComponentName;
 import android.content.ContentUris;
 import android.content.ContentValues;
@@ -24,12 +25,20 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Build;
+import android.os.SystemClock;
 import android.test.AndroidTestCase;
+import android.text.format.Time;
 import android.util.Log;
 
+import com.example.android.sunshine.app.data.WeatherContract.AggregateEntry;
+import com.example.android.sunshine.app.data.WeatherContract.ArchiveEntry;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationSearchEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
+import java.io.ByteArrayInputStream;
+import java.util.TimeZone;
+
 /*
     Note: This is not a complete set of tests of the Sunshine ContentProvider, but it does test
     that at least the basic functionality has been implemented correctly.
@@ -56,11 +65,21 @@ public class TestProvider extends AndroidTestCase {
                 null,
                 null
         );
+        mContext.getContentResolver().delete(
+                AggregateEntry.CONTENT_URI,
+                null,
+                null
+        );
         mContext.getContentResolver().delete(
                 LocationEntry.CONTENT_URI,
                 null,
                 null
         );
+        mContext.getContentResolver().delete(
+                ArchiveEntry.CONTENT_URI,
+                null,
+                null
+        );
 
         Cursor cursor = mContext.getContentResolver().query(
                 WeatherEntry.CONTENT_URI,
@@ -512,4 +531,462 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    /*
+        This test checks that keyset paging through the location uri returns every row exactly
+        once, in date order, and never more than the requested page size at a time.
+     */
+    public void testPagedWeatherQuery() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, bulkInsertContentValues);
+
+        final int pageSize = 3;
+        long afterDate = 0;
+        int seen = 0;
+        while (true) {
+            Cursor cursor = mContext.getContentResolver().query(
+                    WeatherEntry.buildWeatherLocationPage(TestUtilities.TEST_LOCATION,
+                            afterDate, pageSize),
+                    null, null, null, null);
+            assertTrue("Error: page larger than requested", cursor.getCount() <= pageSize);
+            if (cursor.getCount() == 0) {
+                cursor.close();
+                break;
+            }
+            int dateColumn = cursor.getColumnIndex(WeatherEntry.COLUMN_DATE);
+            while (cursor.moveToNext()) {
+                TestUtilities.validateCurrentRecord("testPagedWeatherQuery.  Error validating row "
+                        + seen, cursor, bulkInsertContentValues[seen]);
+                long date = cursor.getLong(dateColumn);
+                assertTrue("Error: pages out of order", date > afterDate);
+                afterDate = date;
+                seen++;
+            }
+            cursor.close();
+        }
+        assertEquals("Error: paging did not return every row", BULK_INSERT_RECORDS_TO_INSERT, seen);
+    }
+
+    /*
+        This test moves weather into the archive, reads it back through a location range
+        query and then compacts it into weekly rows, splitting a week where its month ends.
+     */
+    public void testArchiveAndCompact() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, bulkInsertContentValues);
+
+        int archived = mContext.getContentResolver().delete(
+                WeatherEntry.buildArchivingDeleteUri(), null, null);
+        assertEquals("Error: not every weather row was archived",
+                BULK_INSERT_RECORDS_TO_INSERT, archived);
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals("Error: archived rows were left in the weather table", 0, cursor.getCount());
+        cursor.close();
+
+        long firstDate = bulkInsertContentValues[0].getAsLong(WeatherEntry.COLUMN_DATE);
+        long lastDate = bulkInsertContentValues[BULK_INSERT_RECORDS_TO_INSERT - 1]
+                .getAsLong(WeatherEntry.COLUMN_DATE);
+        cursor = mContext.getContentResolver().query(
+                ArchiveEntry.buildArchiveLocationWithRange(TestUtilities.TEST_LOCATION,
+                        firstDate, lastDate),
+                null, null, null, null);
+        assertEquals("Error: archive range query returned the wrong rows",
+                BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.close();
+
+        // Compact everything; ten consecutive days can span at most three weekly buckets
+        int removed = mContext.getContentResolver().delete(
+                ArchiveEntry.buildCompactUri(System.currentTimeMillis()), null, null);
+        assertTrue("Error: compaction did not shrink the archive", removed > 0);
+
+        cursor = mContext.getContentResolver().query(
+                ArchiveEntry.buildArchiveLocationWithRange(TestUtilities.TEST_LOCATION,
+                        firstDate - 7 * 24 * 60 * 60 * 1000L, lastDate),
+                null, null, null, null);
+        int days = 0;
+        int daysColumn = cursor.getColumnIndex(ArchiveEntry.COLUMN_DAYS);
+        int maxColumn = cursor.getColumnIndex(ArchiveEntry.COLUMN_MAX_TEMP);
+        double max = 0;
+        while (cursor.moveToNext()) {
+            days += cursor.getInt(daysColumn);
+            max = Math.max(max, cursor.getDouble(maxColumn));
+        }
+        assertTrue("Error: too many rows after compaction", cursor.getCount() <= 3);
+        assertEquals("Error: compacted rows lost days", BULK_INSERT_RECORDS_TO_INSERT, days);
+        assertEquals("Error: compaction lost the maximum temperature",
+                75.0 + BULK_INSERT_RECORDS_TO_INSERT - 1, max);
+        cursor.close();
+
+        // Monday, January 26th to Tuesday, February 3rd, 2015: the first week ends in February
+        long weekStart = normalizedLocalDate(26, 0, 2015);
+        long weekEnd = normalizedLocalDate(3, 1, 2015);
+        for (int monthDay = 26; monthDay <= 34; monthDay++) {
+            ContentValues values = TestUtilities.createWeatherValues(0);
+            values.remove(WeatherEntry.COLUMN_LOC_KEY);
+            values.put(ArchiveEntry.COLUMN_LOCATION_SETTING, TestUtilities.TEST_LOCATION);
+            values.put(ArchiveEntry.COLUMN_DATE, normalizedLocalDate(monthDay, 0, 2015));
+            mContext.getContentResolver().insert(ArchiveEntry.CONTENT_URI, values);
+        }
+        mContext.getContentResolver().delete(
+                ArchiveEntry.buildCompactUri(System.currentTimeMillis()), null, null);
+
+        cursor = mContext.getContentResolver().query(
+                ArchiveEntry.buildArchiveLocationWithRange(TestUtilities.TEST_LOCATION,
+                        weekStart, weekEnd),
+                null, null, null, null);
+        int dateColumn = cursor.getColumnIndex(ArchiveEntry.COLUMN_DATE);
+        int monthColumn = cursor.getColumnIndex(ArchiveEntry.COLUMN_MONTH);
+        int januaryDays = 0;
+        int februaryDays = 0;
+        while (cursor.moveToNext()) {
+            assertEquals("Error: a compacted row is filed under the wrong month",
+                    ArchiveEntry.getMonthKey(cursor.getLong(dateColumn)),
+                    cursor.getInt(monthColumn));
+            if (cursor.getInt(monthColumn) == 201501) {
+                januaryDays += cursor.getInt(daysColumn);
+            } else {
+                februaryDays += cursor.getInt(daysColumn);
+            }
+        }
+        assertEquals("Error: a week straddling two months was not split at the month", 3,
+                cursor.getCount());
+        assertEquals("Error: January days were merged into February", 6, januaryDays);
+        assertEquals("Error: February days were merged into January", 3, februaryDays);
+        cursor.close();
+    }
+
+    /*
+        This test checks that the weekly and monthly rollups follow a bulk insert, are rebuilt
+        rather than double counted when a day is revised, keep days that were archived, drop
+        days that were deleted, and follow days revised through an update.
+     */
+    public void testAggregates() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, bulkInsertContentValues);
+
+        assertEquals("Error: weekly rollups do not cover every day",
+                BULK_INSERT_RECORDS_TO_INSERT, countAggregateDays(AggregateEntry.PERIOD_WEEK));
+        assertEquals("Error: monthly rollups do not cover every day",
+                BULK_INSERT_RECORDS_TO_INSERT, countAggregateDays(AggregateEntry.PERIOD_MONTH));
+
+        // Revise the first day with a new maximum, as a later sync would
+        long firstDate = bulkInsertContentValues[0].getAsLong(WeatherEntry.COLUMN_DATE);
+        ContentValues revised = new ContentValues(bulkInsertContentValues[0]);
+        revised.put(WeatherEntry.COLUMN_MAX_TEMP, 200);
+        revised.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                new ContentValues[]{revised});
+
+        assertEquals("Error: a revised day was counted twice",
+                BULK_INSERT_RECORDS_TO_INSERT, countAggregateDays(AggregateEntry.PERIOD_WEEK));
+        Cursor cursor = mContext.getContentResolver().query(
+                AggregateEntry.buildAggregateLocationWithDate(TestUtilities.TEST_LOCATION,
+                        AggregateEntry.PERIOD_WEEK, firstDate),
+                null, null, null, null);
+        assertEquals("Error: a single period query should return one row", 1, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals("Error: the revised maximum was not rolled up", 200.0,
+                cursor.getDouble(cursor.getColumnIndex(AggregateEntry.COLUMN_MAX_TEMP)));
+        cursor.close();
+
+        // Archived days still count when a later insert rebuilds their period
+        mContext.getContentResolver().delete(WeatherEntry.buildArchivingDeleteUri(),
+                WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{Long.toString(WeatherContract.normalizeDate(firstDate))});
+        ContentValues last = bulkInsertContentValues[BULK_INSERT_RECORDS_TO_INSERT - 1];
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                new ContentValues[]{last});
+        assertEquals("Error: archived days were dropped from the rollups",
+                BULK_INSERT_RECORDS_TO_INSERT, countAggregateDays(AggregateEntry.PERIOD_MONTH));
+
+        // Days deleted without archiving leave their periods
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{Long.toString(WeatherContract.normalizeDate(
+                        last.getAsLong(WeatherEntry.COLUMN_DATE)))});
+        assertEquals("Error: a deleted day is still in the weekly rollups",
+                BULK_INSERT_RECORDS_TO_INSERT - 1, countAggregateDays(AggregateEntry.PERIOD_WEEK));
+        assertEquals("Error: a deleted day is still in the monthly rollups",
+                BULK_INSERT_RECORDS_TO_INSERT - 1, countAggregateDays(AggregateEntry.PERIOD_MONTH));
+
+        // Revise the second day in place
+        long secondDate = WeatherContract.normalizeDate(
+                bulkInsertContentValues[1].getAsLong(WeatherEntry.COLUMN_DATE));
+        ContentValues updated = new ContentValues();
+        updated.put(WeatherEntry.COLUMN_MAX_TEMP, 300);
+        int rowsUpdated = mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, updated,
+                WeatherEntry.COLUMN_DATE + " = ?", new String[]{Long.toString(secondDate)});
+        assertEquals(1, rowsUpdated);
+        cursor = mContext.getContentResolver().query(
+                AggregateEntry.buildAggregateLocationWithDate(TestUtilities.TEST_LOCATION,
+                        AggregateEntry.PERIOD_MONTH, secondDate),
+                null, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: an updated maximum was not rolled up", 300.0,
+                cursor.getDouble(cursor.getColumnIndex(AggregateEntry.COLUMN_MAX_TEMP)));
+        cursor.close();
+    }
+
+    /*
+        This test checks that a location inserted after an upgrade, with only its archive left,
+        gets the rollups of its archived days back.
+     */
+    public void testAggregatesRebuiltFromArchive() {
+        ContentValues[] weatherValues = createBulkInsertWeatherValues(0);
+        for (ContentValues weather : weatherValues) {
+            // The archive shares the weather table's columns, keyed by setting instead of _id
+            ContentValues values = new ContentValues(weather);
+            values.remove(WeatherEntry.COLUMN_LOC_KEY);
+            values.put(ArchiveEntry.COLUMN_LOCATION_SETTING, TestUtilities.TEST_LOCATION);
+            mContext.getContentResolver().insert(ArchiveEntry.CONTENT_URI, values);
+        }
+        assertEquals(0, countAggregateDays(AggregateEntry.PERIOD_WEEK));
+
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        assertEquals("Error: archived days were not rolled up by week",
+                BULK_INSERT_RECORDS_TO_INSERT, countAggregateDays(AggregateEntry.PERIOD_WEEK));
+        assertEquals("Error: archived days were not rolled up by month",
+                BULK_INSERT_RECORDS_TO_INSERT, countAggregateDays(AggregateEntry.PERIOD_MONTH));
+    }
+
+    /*
+        This test checks that the rollups follow local days ahead of UTC, where the local
+        midnight of a Monday, or of the 1st, is still the previous day in UTC.
+     */
+    public void testAggregatePeriodsFollowLocalDays() {
+        TimeZone defaultZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("Australia/Sydney"));
+        try {
+            ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+            Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                    testValues);
+            long locationRowId = ContentUris.parseId(locationUri);
+
+            long sunday = normalizedLocalDate(31, 4, 2015);
+            long monday = normalizedLocalDate(1, 5, 2015);
+            ContentValues[] values = new ContentValues[2];
+            values[0] = TestUtilities.createWeatherValues(locationRowId);
+            values[0].put(WeatherEntry.COLUMN_DATE, sunday);
+            values[1] = TestUtilities.createWeatherValues(locationRowId);
+            values[1].put(WeatherEntry.COLUMN_DATE, monday);
+            mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+
+            for (String period : new String[]{
+                    AggregateEntry.PERIOD_WEEK, AggregateEntry.PERIOD_MONTH}) {
+                Cursor cursor = mContext.getContentResolver().query(
+                        AggregateEntry.buildAggregateLocationWithDate(
+                                TestUtilities.TEST_LOCATION, period, monday),
+                        null, null, null, null);
+                assertTrue("Error: no " + period + " starts on the Monday", cursor.moveToFirst());
+                assertEquals("Error: the " + period + " doesn't start on the Monday", monday,
+                        cursor.getLong(cursor.getColumnIndex(AggregateEntry.COLUMN_PERIOD_START)));
+                assertEquals("Error: the Sunday was counted in the Monday's " + period, 1,
+                        cursor.getInt(cursor.getColumnIndex(AggregateEntry.COLUMN_DAYS)));
+                cursor.close();
+                assertEquals("Error: the Sunday and Monday should be two " + period + "s", 2,
+                        countAggregateRows(period));
+            }
+        } finally {
+            TimeZone.setDefault(defaultZone);
+        }
+    }
+
+    /*
+        This test checks that archived days are partitioned by local month ahead of UTC, where
+        the local midnight of the 1st is still the previous month in UTC.
+     */
+    public void testArchiveMonthFollowsLocalDays() {
+        TimeZone defaultZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("Australia/Sydney"));
+        try {
+            ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+            Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                    testValues);
+            long locationRowId = ContentUris.parseId(locationUri);
+
+            long lastOfMay = normalizedLocalDate(31, 4, 2015);
+            long firstOfJune = normalizedLocalDate(1, 5, 2015);
+            ContentValues[] values = new ContentValues[2];
+            values[0] = TestUtilities.createWeatherValues(locationRowId);
+            values[0].put(WeatherEntry.COLUMN_DATE, lastOfMay);
+            values[1] = TestUtilities.createWeatherValues(locationRowId);
+            values[1].put(WeatherEntry.COLUMN_DATE, firstOfJune);
+            mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+            mContext.getContentResolver().delete(WeatherEntry.buildArchivingDeleteUri(),
+                    null, null);
+
+            Cursor cursor = mContext.getContentResolver().query(
+                    ArchiveEntry.buildArchiveLocationWithRange(TestUtilities.TEST_LOCATION,
+                            lastOfMay, firstOfJune),
+                    null, null, null, null);
+            assertEquals(2, cursor.getCount());
+            int monthColumn = cursor.getColumnIndex(ArchiveEntry.COLUMN_MONTH);
+            cursor.moveToFirst();
+            assertEquals("Error: the 31st was archived in the wrong month", 201505,
+                    cursor.getInt(monthColumn));
+            cursor.moveToNext();
+            assertEquals("Error: the 1st was archived in the previous month", 201506,
+                    cursor.getInt(monthColumn));
+            cursor.close();
+            assertEquals(201506, ArchiveEntry.getMonthKey(firstOfJune));
+        } finally {
+            TimeZone.setDefault(defaultZone);
+        }
+    }
+
+    /*
+        Returns the normalized date of a local day, e.g. (1, 5, 2015) for June 1st, 2015.
+        The month counts from 0, as in Time.
+     */
+    private static long normalizedLocalDate(int monthDay, int month, int year) {
+        Time time = new Time();
+        time.set(0, 0, 12, monthDay, month, year);
+        return WeatherContract.normalizeDate(time.toMillis(false));
+    }
+
+    private int countAggregateRows(String period) {
+        Cursor cursor = mContext.getContentResolver().query(
+                AggregateEntry.buildAggregateLocation(TestUtilities.TEST_LOCATION, period),
+                null, null, null, null);
+        int rows = cursor.getCount();
+        cursor.close();
+        return rows;
+    }
+
+    private int countAggregateDays(String period) {
+        Cursor cursor = mContext.getContentResolver().query(
+                AggregateEntry.buildAggregateLocation(TestUtilities.TEST_LOCATION, period),
+                null, null, null, null);
+        int days = 0;
+        int daysColumn = cursor.getColumnIndex(AggregateEntry.COLUMN_DAYS);
+        while (cursor.moveToNext()) {
+            days += cursor.getInt(daysColumn);
+        }
+        cursor.close();
+        return days;
+    }
+
+    /*
+        This test checks that the location search matches word prefixes, ranks city name
+        prefixes ahead of other matches, covers the bundled cities, and follows deletes from
+        the location table.
+     */
+    public void testLocationSearch() {
+        insertSearchLocation("New London", "06320");
+        insertSearchLocation("Londonderry", "Londonderry, UK");
+        insertSearchLocation("Paris", "75001");
+
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationSearchEntry.buildSearchUri("lon", 10), null, null, null, null);
+        assertEquals("Error: prefix search returned the wrong number of cities", 3, cursor.getCount());
+        int cityColumn = cursor.getColumnIndex(LocationSearchEntry.COLUMN_CITY_NAME);
+        int settingColumn = cursor.getColumnIndex(LocationSearchEntry.COLUMN_LOCATION_SETTING);
+        cursor.moveToFirst();
+        assertEquals("Error: the bundled exact match should rank first",
+                "London, GB", cursor.getString(settingColumn));
+        cursor.moveToNext();
+        assertEquals("Error: city name prefixes should rank next", "Londonderry",
+                cursor.getString(cityColumn));
+        cursor.moveToNext();
+        assertEquals("Error: word matches should rank last", "New London",
+                cursor.getString(cityColumn));
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(
+                LocationSearchEntry.buildSuggestUri("new lon", 10), null, null, null, null);
+        assertTrue("Error: no suggestion returned", cursor.moveToFirst());
+        assertEquals("Error: the suggestion should fill in the location setting", "06320",
+                cursor.getString(cursor.getColumnIndex(SearchManager.SUGGEST_COLUMN_QUERY)));
+        cursor.close();
+
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI,
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?", new String[]{"75001"});
+        cursor = mContext.getContentResolver().query(
+                LocationSearchEntry.buildSearchUri("par", 10), null, null, null, null);
+        assertEquals("Error: a deleted location is still searchable", 1, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals("Error: the bundled city should remain", "Paris, FR",
+                cursor.getString(cursor.getColumnIndex(LocationSearchEntry.COLUMN_LOCATION_SETTING)));
+        cursor.close();
+    }
+
+    /*
+        This test checks that prefix suggestions stay fast with an index the size of a full
+        offline city list, around 25,000 cities, rather than the sample bundled with the app.
+     */
+    public void testLocationSearchLatency() throws Exception {
+        final int cities = 25000;
+        final int queries = 100;
+        // A few milliseconds, as only the limit's worth of rows is read from the index
+        final long maxAverageMillis = 5;
+
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        StringBuilder tsv = new StringBuilder();
+        for (int i = 0; i < cities; i++) {
+            tsv.append(syntheticCityName(i)).append("\tZZ\t0\t0\n");
+        }
+        // Indexed after the bundled cities, so the real ones are left alone
+        long docidStart = WeatherDbHelper.BUNDLED_CITY_DOCID_BASE + (1L << 24);
+        try {
+            int indexed = WeatherDbHelper.indexCities(db,
+                    new ByteArrayInputStream(tsv.toString().getBytes("UTF-8")), docidStart);
+            assertEquals(cities, indexed);
+
+            // Warm up the page cache and the provider, as the first keystroke would
+            mContext.getContentResolver().query(
+                    LocationSearchEntry.buildSuggestUri("a", 10), null, null, null, null).close();
+
+            long start = SystemClock.elapsedRealtime();
+            for (int i = 0; i < queries; i++) {
+                String prefix = syntheticCityName(i * 241 % cities).substring(0, 1 + i % 4);
+                Cursor cursor = mContext.getContentResolver().query(
+                        LocationSearchEntry.buildSuggestUri(prefix, 10), null, null, null, null);
+                assertTrue("Error: no suggestion for " + prefix, cursor.moveToFirst());
+                cursor.close();
+            }
+            long average = (SystemClock.elapsedRealtime() - start) / queries;
+            Log.d(LOG_TAG, "Location search: " + average + " ms per query over " + cities
+                    + " cities");
+            assertTrue("Error: location search took " + average + " ms per query",
+                    average <= maxAverageMillis);
+        } finally {
+            db.execSQL("DELETE FROM " + LocationSearchEntry.TABLE_NAME + " WHERE docid >= ?",
+                    new Object[]{docidStart});
+            dbHelper.close();
+        }
+    }
+
+    private static String syntheticCityName(int i) {
+        // Pronounceable, and spread over the alphabet like real names
+        String syllables = "bakelimonurasetivo";
+        StringBuilder name = new StringBuilder();
+        for (int n = i + 1000; n > 0; n /= 9) {
+            int k = n % 9;
+            name.append(syllables, k * 2, k * 2 + 2);
+        }
+        name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+        return name.toString();
+    }
+
+    private void insertSearchLocation(String cityName, String locationSetting) {
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_CITY_NAME, cityName);
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        values.put(LocationEntry.COLUMN_COORD_LAT, 0.0);
+        values.put(LocationEntry.COLUMN_COORD_LONG, 0.0);
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, values);
+    }
 }
@@ -36,6 +36,16 @@ public class TestUriMatcher extends AndroidTestCase {
     private static final Uri TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(LOCATION_QUERY, TEST_DATE);
     // content://com.example.android.sunshine.app/location"
     private static final Uri TEST_LOCATION_DIR = WeatherContract.LocationEntry.CONTENT_URI;
+    // content://com.example.android.sunshine.app/archive"
+    private static final Uri TEST_ARCHIVE_DIR = WeatherContract.ArchiveEntry.CONTENT_URI;
+    private static final Uri TEST_ARCHIVE_WITH_LOCATION_DIR = WeatherContract.ArchiveEntry.buildArchiveLocationWithRange(LOCATION_QUERY, TEST_DATE, TEST_DATE);
+    private static final Uri TEST_ARCHIVE_COMPACT = WeatherContract.ArchiveEntry.buildCompactUri(TEST_DATE);
+    // content://com.example.android.sunshine.app/aggregate"
+    private static final Uri TEST_AGGREGATE_DIR = WeatherContract.AggregateEntry.CONTENT_URI;
+    // content://com.example.android.sunshine.app/location_search/London"
+    private static final Uri TEST_LOCATION_SEARCH = WeatherContract.LocationSearchEntry.buildSearchUri(LOCATION_QUERY, 10);
+    private static final Uri TEST_SEARCH_SUGGEST = WeatherContract.LocationSearchEntry.buildSuggestUri(LOCATION_QUERY, 10);
+    private static final Uri TEST_AGGREGATE_WITH_LOCATION_AND_PERIOD = WeatherContract.AggregateEntry.buildAggregateLocationWithDate(LOCATION_QUERY, WeatherContract.AggregateEntry.PERIOD_WEEK, TEST_DATE);
 
     /*
         Students: This function tests that your UriMatcher returns the correct integer value
@@ -53,5 +63,19 @@ public class TestUriMatcher extends AndroidTestCase {
                 testMatcher.match(TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR), WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE);
         assertEquals("Error: The LOCATION URI was matched incorrectly.",
                 testMatcher.match(TEST_LOCATION_DIR), WeatherProvider.LOCATION);
+        assertEquals("Error: The ARCHIVE URI was matched incorrectly.",
+                testMatcher.match(TEST_ARCHIVE_DIR), WeatherProvider.ARCHIVE);
+        assertEquals("Error: The ARCHIVE WITH LOCATION URI was matched incorrectly.",
+                testMatcher.match(TEST_ARCHIVE_WITH_LOCATION_DIR), WeatherProvider.ARCHIVE_WITH_LOCATION);
+        assertEquals("Error: The ARCHIVE COMPACT URI was matched incorrectly.",
+                testMatcher.match(TEST_ARCHIVE_COMPACT), WeatherProvider.ARCHIVE_COMPACT);
+        assertEquals("Error: The AGGREGATE URI was matched incorrectly.",
+                testMatcher.match(TEST_AGGREGATE_DIR), WeatherProvider.AGGREGATE);
+        assertEquals("Error: The AGGREGATE WITH LOCATION AND PERIOD URI was matched incorrectly.",
+                testMatcher.match(TEST_AGGREGATE_WITH_LOCATION_AND_PERIOD), WeatherProvider.AGGREGATE_WITH_LOCATION_AND_PERIOD);
+        assertEquals("Error: The LOCATION SEARCH URI was matched incorrectly.",
+                testMatcher.match(TEST_LOCATION_SEARCH), WeatherProvider.LOCATION_SEARCH);
+        assertEquals("Error: The SEARCH SUGGEST URI was matched incorrectly.",
+                testMatcher.match(TEST_SEARCH_SUGGEST), WeatherProvider.SEARCH_SUGGEST);
     }
 }
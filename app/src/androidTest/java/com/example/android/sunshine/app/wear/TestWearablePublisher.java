@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wear;
+
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.WearForecast;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class TestWearablePublisher extends AndroidTestCase {
+
+    private static final long TODAY = 1419033600000L;
+
+    private ScheduledExecutorService mExecutor;
+    private FakeTransport mTransport;
+    private WearablePublisher mPublisher;
+
+    /**
+     * Records what would have been sent, and can be told to fail.
+     */
+    static class FakeTransport implements WearablePublisher.Transport {
+        final List<byte[]> payloads = new ArrayList<byte[]>();
+        final List<Boolean> urgent = new ArrayList<Boolean>();
+        final List<String> messageNodes = new ArrayList<String>();
+        volatile boolean connected;
+        volatile boolean failConnect;
+        volatile int connects;
+        volatile int disconnects;
+        // Held by the first connect, if set, so payloads queue up behind it
+        volatile CountDownLatch connectGate;
+
+        @Override
+        public boolean connect(long timeoutMillis) {
+            connects++;
+            CountDownLatch gate = connectGate;
+            if (gate != null) {
+                try {
+                    gate.await(timeoutMillis, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    return false;
+                }
+            }
+            connected = !failConnect;
+            return connected;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        public synchronized boolean putDataItem(String path, byte[] payload, boolean isUrgent,
+                                                long timeoutMillis) {
+            assertEquals(WearForecast.PATH, path);
+            payloads.add(payload);
+            urgent.add(isUrgent);
+            return true;
+        }
+
+        @Override
+        public synchronized boolean sendMessage(String nodeId, String path, byte[] payload,
+                                                long timeoutMillis) {
+            assertEquals(WearForecast.PATH, path);
+            messageNodes.add(nodeId);
+            return true;
+        }
+
+        synchronized int getMessageCount() {
+            return messageNodes.size();
+        }
+
+        @Override
+        public void disconnect() {
+            disconnects++;
+            connected = false;
+        }
+
+        synchronized int getSentCount() {
+            return payloads.size();
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        clearPreferences();
+        mExecutor = Executors.newSingleThreadScheduledExecutor();
+        mTransport = new FakeTransport();
+        mPublisher = new WearablePublisher(mContext, mTransport, mExecutor);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mExecutor.shutdownNow();
+        clearPreferences();
+        super.tearDown();
+    }
+
+    private void clearPreferences() {
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .remove(mContext.getString(R.string.pref_wear_payload_hash))
+                .remove(mContext.getString(R.string.pref_wear_weather_id))
+                .commit();
+    }
+
+    private static WearForecast createForecast(int weatherId, double high) {
+        WearForecast forecast = new WearForecast(true, 1);
+        forecast.setDay(0, TODAY, weatherId, high, 10);
+        return forecast;
+    }
+
+    private void waitForSent(final int count) {
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return mTransport.getSentCount() == count;
+            }
+        }.run();
+    }
+
+    /*
+        This test checks that a forecast is sent once, urgently, and that sending the same one
+        again does nothing.
+     */
+    public void testDuplicateIsSkipped() {
+        mPublisher.publish(createForecast(800, 20));
+        waitForSent(1);
+        assertTrue("Error: the first forecast wasn't urgent", mTransport.urgent.get(0));
+        assertEquals(1, mPublisher.getConnectCount());
+
+        // The hash is stored on the worker thread after sending
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return PreferenceManager.getDefaultSharedPreferences(mContext)
+                        .contains(mContext.getString(R.string.pref_wear_payload_hash));
+            }
+        }.run();
+        mPublisher.publish(createForecast(800, 20));
+        assertEquals(1, mPublisher.getSkippedCount());
+
+        // New temperatures are sent, but only a new condition is urgent
+        mPublisher.publish(createForecast(800, 21));
+        waitForSent(2);
+        assertFalse("Error: a temperature change was urgent", mTransport.urgent.get(1));
+        assertEquals("Error: reconnected while still connected", 1, mTransport.connects);
+    }
+
+    /*
+        This test checks that payloads published while connecting collapse into the latest.
+     */
+    public void testOnlyLatestIsSent() throws Exception {
+        mTransport.connectGate = new CountDownLatch(1);
+        mPublisher.publish(createForecast(800, 20));
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return mTransport.connects == 1;
+            }
+        }.run();
+        // The first is in flight, so these two queue behind it and only the last survives
+        mPublisher.publish(createForecast(801, 21));
+        WearForecast latest = createForecast(802, 22);
+        mPublisher.publish(latest);
+        mTransport.connectGate.countDown();
+
+        waitForSent(2);
+        Thread.sleep(200);
+        assertEquals(2, mTransport.getSentCount());
+        assertTrue(Arrays.equals(latest.toBytes(), mTransport.payloads.get(1)));
+    }
+
+    /*
+        This test checks that a failed connection is counted and doesn't store the hash, so
+        the same forecast is tried again.
+     */
+    public void testConnectFailureIsRetried() {
+        mTransport.failConnect = true;
+        mPublisher.publish(createForecast(800, 20));
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return mPublisher.getConnectFailureCount() == 1;
+            }
+        }.run();
+        assertEquals(0, mTransport.getSentCount());
+
+        mTransport.failConnect = false;
+        mPublisher.publish(createForecast(800, 20));
+        waitForSent(1);
+        assertEquals(2, mPublisher.getConnectCount());
+        assertEquals(0, mPublisher.getSkippedCount());
+    }
+
+    /*
+        This test checks that a refresh is answered when the watch holds something else, and
+        that a second request within the interval is ignored.
+     */
+    public void testRefreshIsDedupedAndRateLimited() throws Exception {
+        WearForecast forecast = createForecast(800, 20);
+        byte[] upToDate = WearForecast.createRefreshRequest(forecast);
+        mPublisher.answerRefresh("watch", upToDate, forecast);
+        assertEquals("Error: a watch holding the forecast was answered",
+                1, mPublisher.getRefreshSkippedCount());
+
+        // That request used up the interval
+        mPublisher.answerRefresh("watch", new byte[0], forecast);
+        assertEquals(2, mPublisher.getRefreshSkippedCount());
+        Thread.sleep(200);
+        assertEquals(0, mTransport.getMessageCount());
+
+        // A publisher that hasn't answered recently sends a watch holding nothing the forecast
+        WearablePublisher publisher = new WearablePublisher(mContext, mTransport, mExecutor);
+        publisher.answerRefresh("watch", new byte[0], forecast);
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return mTransport.getMessageCount() == 1;
+            }
+        }.run();
+        assertEquals("watch", mTransport.messageNodes.get(0));
+        assertEquals(1, publisher.getRefreshCount());
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import com.bumptech.glide.BitmapRequestBuilder;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Weather art decoded at the exact size of the widget or notification it goes into, for the
+ * background services that hand bitmaps to RemoteViews.  Each (image, size) pair is decoded
+ * once, downsampled by Glide using its bitmap pool, and then kept here so later updates
+ * reuse it.  Glide itself would lose track of these bitmaps, since a blocking get() never
+ * releases them back to its memory cache.
+ * <p>
+ * The bitmaps are shared, so callers must not modify or recycle them.  Decoding blocks, so
+ * none of these methods may be called on the main thread.
+ */
+public final class ArtBitmapCache {
+    private static final String LOG_TAG = ArtBitmapCache.class.getSimpleName();
+
+    // A notification's large icon at xxxhdpi is under 100 kB; this holds a few dozen images
+    private static final int MAX_SIZE_KB = 4 * 1024;
+
+    private static final LruCache<String, Bitmap> sCache =
+            new LruCache<String, Bitmap>(getMaxSizeKb()) {
+                @Override
+                protected int sizeOf(String key, Bitmap bitmap) {
+                    // getByteCount needs API 12
+                    return Math.max(1, bitmap.getRowBytes() * bitmap.getHeight() / 1024);
+                }
+            };
+
+    private ArtBitmapCache() {
+    }
+
+    private static int getMaxSizeKb() {
+        // Never more than an eighth of the heap, on small devices
+        return (int) Math.min(MAX_SIZE_KB, Runtime.getRuntime().maxMemory() / 1024 / 8);
+    }
+
+    /**
+     * Returns the art from artUrl, or the resource if artUrl is null or can't be loaded,
+     * scaled to fit within width x height.
+     *
+     * @return the bitmap, or null if neither could be decoded
+     */
+    public static Bitmap get(Context context, String artUrl, int artResourceId,
+                             int width, int height) {
+        context = context.getApplicationContext();
+        if (artUrl != null) {
+            String key = artUrl + '@' + width + 'x' + height;
+            Bitmap bitmap = sCache.get(key);
+            if (bitmap == null) {
+                bitmap = decode(key, Glide.with(context).load(artUrl).asBitmap(), width, height);
+            }
+            if (bitmap != null) return bitmap;
+        }
+        if (artResourceId <= 0) return null;
+        String key = "res:" + artResourceId + '@' + width + 'x' + height;
+        Bitmap bitmap = sCache.get(key);
+        return bitmap != null ? bitmap
+                : decode(key, Glide.with(context).load(artResourceId).asBitmap(), width, height);
+    }
+
+    /**
+     * Returns the art sized for a notification's large icon.
+     */
+    public static Bitmap getLargeIcon(Context context, String artUrl, int artResourceId) {
+        Resources resources = context.getResources();
+        // On Honeycomb and higher devices, we can retrieve the size of the large icon
+        // Prior to that, we use a fixed size
+        @SuppressLint("InlinedApi")
+        int largeIconWidth = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+        @SuppressLint("InlinedApi")
+        int largeIconHeight = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+        return get(context, artUrl, artResourceId, largeIconWidth, largeIconHeight);
+    }
+
+    /**
+     * Drops every cached bitmap, e.g. when memory is low.
+     */
+    public static void clear() {
+        sCache.evictAll();
+    }
+
+    private static Bitmap decode(String key, BitmapRequestBuilder<?, Bitmap> request,
+                                 int width, int height) {
+        Bitmap bitmap;
+        try {
+            bitmap = request
+                    .diskCacheStrategy(DiskCacheStrategy.ALL)
+                    .fitCenter()
+                    .into(width, height)
+                    .get();
+        } catch (InterruptedException | ExecutionException e) {
+            Log.e(LOG_TAG, "Error decoding " + key, e);
+            return null;
+        }
+        if (bitmap != null) sCache.put(key, bitmap);
+        return bitmap;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.text.format.Time;
+import android.util.SparseArray;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Backs the date helpers in {@link Utility}.  The formatters and the "Today" and "Tomorrow"
+ * strings are created once per locale and time zone, and each calendar day is formatted at
+ * most once, so formatting a date that has been seen before allocates nothing.
+ * <p>
+ * The cache is dropped when the default locale changes or a time zone change is broadcast.
+ * Every method is synchronized, since SimpleDateFormat is not thread safe and rows are
+ * formatted on loader threads as well as the main thread.
+ */
+final class DateFormatCache {
+
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000;
+    // Days to remember before starting over; a forecast list shows far fewer
+    private static final int MAX_DAYS = 128;
+
+    private static DateFormatCache sCache;
+    private static BroadcastReceiver sReceiver;
+
+    private final Locale mLocale;
+    private final TimeZone mTimeZone;
+    private final String mToday;
+    private final String mTomorrow;
+    private final SimpleDateFormat mDayFormat;
+    private final SimpleDateFormat mShortDateFormat;
+    private final SimpleDateFormat mMonthDayFormat;
+    // Keyed by the local day number of the date, which is all the formats depend on
+    private final SparseArray<Day> mDays = new SparseArray<Day>();
+
+    /**
+     * The strings for one calendar day.  The composite strings are built on first use.
+     */
+    private static final class Day {
+        final String dayName;
+        final String shortDate;
+        final String monthDay;
+        String longToday;
+        // getFullFriendlyDayString's result, and the day name it was built from
+        String fullFriendly;
+        String fullFriendlyDayName;
+
+        Day(String dayName, String shortDate, String monthDay) {
+            this.dayName = dayName;
+            this.shortDate = shortDate;
+            this.monthDay = monthDay;
+        }
+    }
+
+    private DateFormatCache(Context context, Locale locale) {
+        mLocale = locale;
+        mTimeZone = TimeZone.getDefault();
+        mToday = context.getString(R.string.today);
+        mTomorrow = context.getString(R.string.tomorrow);
+        mDayFormat = new SimpleDateFormat("EEEE");
+        mShortDateFormat = new SimpleDateFormat("EEE MMM dd");
+        mMonthDayFormat = new SimpleDateFormat("MMMM dd");
+    }
+
+    private static DateFormatCache get(Context context) {
+        Locale locale = Locale.getDefault();
+        if (sCache == null || !sCache.mLocale.equals(locale)) {
+            if (sReceiver == null) {
+                registerReceiver(context.getApplicationContext());
+            }
+            sCache = new DateFormatCache(context, locale);
+        }
+        return sCache;
+    }
+
+    private static void registerReceiver(Context context) {
+        sReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                invalidate();
+            }
+        };
+        IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+        filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+        context.registerReceiver(sReceiver, filter);
+    }
+
+    static synchronized void invalidate() {
+        sCache = null;
+    }
+
+    private Day getDay(long dateInMillis) {
+        long localMillis = dateInMillis + mTimeZone.getOffset(dateInMillis);
+        int key = (int) (localMillis / DAY_IN_MILLIS);
+        if (localMillis < 0 && localMillis % DAY_IN_MILLIS != 0) key--;
+
+        Day day = mDays.get(key);
+        if (day == null) {
+            if (mDays.size() >= MAX_DAYS) mDays.clear();
+            day = new Day(mDayFormat.format(dateInMillis), mShortDateFormat.format(dateInMillis),
+                    mMonthDayFormat.format(dateInMillis));
+            mDays.put(key, day);
+        }
+        return day;
+    }
+
+    // Like Utility always has, this compares days using the current offset from GMT
+    private int getJulianDay(long dateInMillis, long now) {
+        return Time.getJulianDay(dateInMillis, mTimeZone.getOffset(now) / 1000);
+    }
+
+    private String getDayName(long dateInMillis, long now) {
+        int julianDay = getJulianDay(dateInMillis, now);
+        int currentJulianDay = getJulianDay(now, now);
+        if (julianDay == currentJulianDay) {
+            return mToday;
+        } else if (julianDay == currentJulianDay + 1) {
+            return mTomorrow;
+        } else {
+            return getDay(dateInMillis).dayName;
+        }
+    }
+
+    static synchronized String getFriendlyDayString(Context context, long dateInMillis,
+                                                    boolean displayLongToday) {
+        DateFormatCache cache = get(context);
+        long now = System.currentTimeMillis();
+        int julianDay = cache.getJulianDay(dateInMillis, now);
+        int currentJulianDay = cache.getJulianDay(now, now);
+
+        if (displayLongToday && julianDay == currentJulianDay) {
+            Day day = cache.getDay(dateInMillis);
+            if (day.longToday == null) {
+                day.longToday = String.format(context.getString(
+                        R.string.format_full_friendly_date, cache.mToday, day.monthDay));
+            }
+            return day.longToday;
+        } else if (julianDay < currentJulianDay + 7) {
+            return cache.getDayName(dateInMillis, now);
+        } else {
+            return cache.getDay(dateInMillis).shortDate;
+        }
+    }
+
+    static synchronized String getFullFriendlyDayString(Context context, long dateInMillis) {
+        DateFormatCache cache = get(context);
+        String dayName = cache.getDayName(dateInMillis, System.currentTimeMillis());
+        Day day = cache.getDay(dateInMillis);
+        // The day name turns into "Tomorrow" and then "Today" as the date approaches
+        if (day.fullFriendlyDayName != dayName) {
+            day.fullFriendly = String.format(context.getString(
+                    R.string.format_full_friendly_date, dayName, day.monthDay));
+            day.fullFriendlyDayName = dayName;
+        }
+        return day.fullFriendly;
+    }
+
+    static synchronized String getDayName(Context context, long dateInMillis) {
+        return get(context).getDayName(dateInMillis, System.currentTimeMillis());
+    }
+
+    static synchronized String getFormattedMonthDay(Context context, long dateInMillis) {
+        return get(context).getDay(dateInMillis).monthDay;
+    }
+}
@@ -16,10 +16,12 @@
 package com.example.android.sunshine.app;
 
 import android.content.Context;
-import android.database.Cursor;
 import android.os.Build;
 import android.os.Bundle;
 import android.support.v4.view.ViewCompat;
+import android.support.v7.util.DiffUtil;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -30,13 +32,27 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.data.WeatherContract;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
- * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
+ * from the {@link ForecastRepository} to a {@link android.support.v7.widget.RecyclerView}.
+ * <p>
+ * Rows are held as fixed size pages of {@link ForecastRow}s, formatted off the main thread.
+ * The first page comes from the fragment's loader; later pages are requested from the
+ * {@link ForecastAdapterPageHandler} as the list scrolls towards them.  Only the pages next to
+ * the one being shown are kept, so memory use does not grow with the number of stored rows.
+ * <p>
+ * Items are identified by their date.  When the loader delivers a diff against the rows being
+ * shown, a reload is applied as individual inserts, removals and changes, so days that did
+ * not change are not rebound.
  */
-public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
+public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder>
+        implements ItemChoiceManager.ItemIdLookup {
 
     private static final int VIEW_TYPE_TODAY = 0;
     private static final int VIEW_TYPE_FUTURE_DAY = 1;
@@ -44,7 +60,35 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
 
-    private Cursor mCursor;
+    // Number of rows in each page, including the first one delivered by the loader
+    public static final int PAGE_SIZE = 20;
+    // Pages further than this from the page being bound are dropped, and re-queried through
+    // their keyset anchor if the user scrolls back to them.
+    private static final int RESIDENT_PAGE_RADIUS = 1;
+    // Start fetching the next page when binding this close to the end of the loaded rows
+    private static final int PREFETCH_DISTANCE = PAGE_SIZE / 2;
+
+    // The loader's snapshot of the forecast, which page 0 was built from.  Immutable, so it is
+    // shared with the loader rather than copied.
+    private ForecastRepository.Snapshot mSnapshot;
+    private List<ForecastRow> mFirstPage;
+    // Pages 1..n
+    private final SparseArray<List<ForecastRow>> mPages = new SparseArray<List<ForecastRow>>();
+    // mPageAnchors.get(k) is the date of the last row on page k, which is the key for page k+1
+    private final ArrayList<Long> mPageAnchors = new ArrayList<Long>();
+    // Pages for which a request is outstanding
+    private final SparseBooleanArray mPendingPages = new SparseBooleanArray();
+    // Position of every date loaded since the last swapForecast.  Evicted pages keep their
+    // entries, since positions only change when the first page is replaced.
+    private final HashMap<Long, Integer> mPositionsByDate = new HashMap<Long, Integer>();
+    // The reverse: the date at every position, also kept for evicted pages, so every item has
+    // its stable id whether or not its row is resident.  Every position below mItemCount has
+    // been loaded since the last swapForecast, since the count only grows as pages arrive.
+    private long[] mDatesByPosition = new long[PAGE_SIZE];
+    private int mItemCount;
+    private int mCurrentPage;
+    private boolean mReachedEnd;
+    private ForecastAdapterPageHandler mPageHandler;
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
@@ -73,9 +117,9 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            ForecastRow row = getRow(adapterPosition);
+            if ( null == row ) return;
+            mClickHandler.onClick(row.date, this);
             mICM.onClick(this);
         }
     }
@@ -84,10 +128,24 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         void onClick(Long date, ForecastAdapterViewHolder vh);
     }
 
+    /**
+     * Supplies pages after the first one.  Implementations should query and build the rows off
+     * the main thread and hand them back through {@link #setPage(int, List)}.
+     */
+    public static interface ForecastAdapterPageHandler {
+        /**
+         * @param page      index of the page being requested, always >= 1
+         * @param afterDate date of the last row of the previous page; the page starts after it
+         * @param limit     maximum number of rows in the page
+         */
+        void onRequestPage(int page, long afterDate, int limit);
+    }
+
     public ForecastAdapter(Context context, ForecastAdapterOnClickHandler dh, View emptyView, int choiceMode) {
         mContext = context;
         mClickHandler = dh;
         mEmptyView = emptyView;
+        setHasStableIds(true);
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
     }
@@ -124,26 +182,36 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        prefetchAround(position);
+        ForecastRow row = getRow(position);
+        if ( null == row ) {
+            // The page was evicted and is being re-queried; setPage will rebind this row.  Until
+            // then, don't leave the recycled view showing another day.
+            bindPlaceholder(forecastAdapterViewHolder);
+            mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+            return;
+        }
         int defaultImage;
-        boolean useLongToday;
+        String date;
 
         switch (getItemViewType(position)) {
             case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
-                useLongToday = true;
+                defaultImage = row.artResource;
+                date = row.longDateText;
                 break;
             default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
-                useLongToday = false;
+                defaultImage = row.iconResource;
+                date = row.dateText;
         }
 
-        if ( Utility.usingLocalGraphics(mContext) ) {
+        if ( null == row.artUrl ) {
+            // A load started for the view's previous row would replace the icon
+            Glide.clear(forecastAdapterViewHolder.mIconView);
             forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
         } else {
             Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
+                    .load(row.artUrl)
+                    .diskCacheStrategy(DiskCacheStrategy.ALL)
                     .error(defaultImage)
                     .crossFade()
                     .into(forecastAdapterViewHolder.mIconView);
@@ -151,40 +219,42 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
         // this enables better animations. even if we lose state due to a device rotation,
         // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
-
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
-
-        // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + row.date);
 
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
+        forecastAdapterViewHolder.mDateView.setText(date);
 
-        // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+        forecastAdapterViewHolder.mDescriptionView.setText(row.description);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(row.descriptionContentDescription);
 
         // For accessibility, we don't want a content description for the icon field
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+        forecastAdapterViewHolder.mHighTempView.setText(row.high);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(row.highContentDescription);
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+        forecastAdapterViewHolder.mLowTempView.setText(row.low);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(row.lowContentDescription);
 
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
     }
 
+    /**
+     * Blanks a view whose row isn't resident, and cancels any art still loading into it.
+     */
+    private void bindPlaceholder(ForecastAdapterViewHolder vh) {
+        Glide.clear(vh.mIconView);
+        vh.mIconView.setImageDrawable(null);
+        ViewCompat.setTransitionName(vh.mIconView, null);
+        vh.mDateView.setText(null);
+        vh.mDescriptionView.setText(null);
+        vh.mDescriptionView.setContentDescription(null);
+        vh.mHighTempView.setText(null);
+        vh.mHighTempView.setContentDescription(null);
+        vh.mLowTempView.setText(null);
+        vh.mLowTempView.setContentDescription(null);
+    }
+
     public void onRestoreInstanceState(Bundle savedInstanceState) {
         mICM.onRestoreInstanceState(savedInstanceState);
     }
@@ -208,18 +278,172 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        return mItemCount;
     }
 
-    public void swapCursor(Cursor newCursor) {
-        mCursor = newCursor;
-        notifyDataSetChanged();
+    @Override
+    public long getItemId(int position) {
+        if ( position < 0 || position >= mItemCount ) return RecyclerView.NO_ID;
+        return mDatesByPosition[position];
+    }
+
+    @Override
+    public int getPositionForItemId(long date) {
+        Integer position = mPositionsByDate.get(date);
+        return null == position ? RecyclerView.NO_POSITION : position;
+    }
+
+    public void setPageHandler(ForecastAdapterPageHandler pageHandler) {
+        mPageHandler = pageHandler;
+    }
+
+    /**
+     * Replaces the first page.  Every later page is dropped, since the data behind the keyset
+     * anchors may have changed; they are fetched again as the list scrolls.
+     */
+    public void swapForecast(ForecastLoader.Result result) {
+        mSnapshot = null == result ? null : result.getSnapshot();
+        List<ForecastRow> rows = null;
+        DiffUtil.DiffResult diff = null;
+        if ( null != result ) {
+            // ForecastLoader has already built the rows, and diffed them, in the background
+            rows = result.getRows();
+            if ( null != mFirstPage && result.getPreviousRows() == mFirstPage ) {
+                diff = result.getDiff();
+            }
+        }
+
+        if ( null != diff ) {
+            // The diff only covers the first page, so remove the later ones first
+            int firstPageCount = mFirstPage.size();
+            int laterCount = mItemCount - firstPageCount;
+            setFirstPage(rows);
+            if ( laterCount > 0 ) notifyItemRangeRemoved(firstPageCount, laterCount);
+            diff.dispatchUpdatesTo(this);
+        } else {
+            setFirstPage(rows);
+            notifyDataSetChanged();
+        }
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
-    public Cursor getCursor() {
-        return mCursor;
+    private void setFirstPage(List<ForecastRow> rows) {
+        mFirstPage = rows;
+        mPages.clear();
+        mPageAnchors.clear();
+        mPendingPages.clear();
+        mPositionsByDate.clear();
+        mItemCount = 0;
+        mCurrentPage = 0;
+        mReachedEnd = true;
+        if ( null != rows ) {
+            mItemCount = rows.size();
+            mReachedEnd = mItemCount < PAGE_SIZE;
+            recordAnchor(0, rows);
+            recordPositions(0, rows);
+        }
+    }
+
+    /**
+     * Delivers a page requested through {@link ForecastAdapterPageHandler#onRequestPage}.
+     */
+    public void setPage(int page, List<ForecastRow> rows) {
+        mPendingPages.delete(page);
+        // Drop answers to requests made before the last swapForecast
+        if ( null == rows || null == mFirstPage || page < 1 || page > mPageAnchors.size() ) {
+            return;
+        }
+        mPages.put(page, rows);
+        recordPositions(page, rows);
+
+        int count = rows.size();
+        if ( page == mPageAnchors.size() ) {
+            // A brand new page at the end of the list
+            recordAnchor(page, rows);
+            mReachedEnd = count < PAGE_SIZE;
+            int start = mItemCount;
+            mItemCount += count;
+            if ( count > 0 ) notifyItemRangeInserted(start, count);
+        } else {
+            // A previously evicted page came back
+            notifyItemRangeChanged(page * PAGE_SIZE, count);
+        }
+        evictDistantPages();
+    }
+
+    /**
+     * @return the snapshot the first page was built from, or null before the first load
+     */
+    public ForecastRepository.Snapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    /**
+     * Returns the row at the given position, or null if that row's page isn't currently
+     * resident.
+     */
+    ForecastRow getRow(int position) {
+        if ( position < 0 || position >= mItemCount ) return null;
+        int page = position / PAGE_SIZE;
+        List<ForecastRow> rows = page == 0 ? mFirstPage : mPages.get(page);
+        int index = position % PAGE_SIZE;
+        if ( null == rows || index >= rows.size() ) return null;
+        return rows.get(index);
+    }
+
+    // Called for every bound position; package-private so tests can scroll without views
+    void prefetchAround(int position) {
+        int page = position / PAGE_SIZE;
+        if ( page != mCurrentPage ) {
+            mCurrentPage = page;
+            evictDistantPages();
+        }
+        if ( page > 0 && null == mPages.get(page) ) {
+            requestPage(page);
+        }
+        if ( !mReachedEnd && position >= mItemCount - PREFETCH_DISTANCE ) {
+            requestPage(mPageAnchors.size());
+        }
+    }
+
+    private void requestPage(int page) {
+        if ( null == mPageHandler || mPendingPages.get(page) ) return;
+        mPendingPages.put(page, true);
+        mPageHandler.onRequestPage(page, mPageAnchors.get(page - 1), PAGE_SIZE);
+    }
+
+    private void recordAnchor(int page, List<ForecastRow> rows) {
+        if ( !rows.isEmpty() ) {
+            long lastDate = rows.get(rows.size() - 1).date;
+            if ( page < mPageAnchors.size() ) {
+                mPageAnchors.set(page, lastDate);
+            } else {
+                mPageAnchors.add(lastDate);
+            }
+        }
+    }
+
+    private void recordPositions(int page, List<ForecastRow> rows) {
+        int start = page * PAGE_SIZE;
+        if ( start + rows.size() > mDatesByPosition.length ) {
+            long[] dates = new long[Math.max(start + rows.size(), mDatesByPosition.length * 2)];
+            System.arraycopy(mDatesByPosition, 0, dates, 0, mDatesByPosition.length);
+            mDatesByPosition = dates;
+        }
+        for ( int i = 0; i < rows.size(); i++ ) {
+            long date = rows.get(i).date;
+            mPositionsByDate.put(date, start + i);
+            mDatesByPosition[start + i] = date;
+        }
+    }
+
+    private void evictDistantPages() {
+        for ( int i = mPages.size() - 1; i >= 0; i-- ) {
+            int key = mPages.keyAt(i);
+            if ( Math.abs(key - mCurrentPage) > RESIDENT_PAGE_RADIUS ) {
+                mPages.removeAt(i);
+            }
+        }
     }
 
     public void selectView(RecyclerView.ViewHolder viewHolder) {
@@ -17,18 +17,19 @@ package com.example.android.sunshine.app;
 
 import android.annotation.TargetApi;
 import android.app.Activity;
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.res.TypedArray;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.design.widget.AppBarLayout;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.LinearLayoutManager;
@@ -48,10 +49,12 @@ import android.widget.TextView;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
+import java.util.List;
+
 /**
  * Encapsulates fetching the forecast and displaying it as a {@link android.support.v7.widget.RecyclerView} layout.
  */
-public class ForecastFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor>, SharedPreferences.OnSharedPreferenceChangeListener {
+public class ForecastFragment extends Fragment implements LoaderManager.LoaderCallbacks<ForecastLoader.Result>, SharedPreferences.OnSharedPreferenceChangeListener {
     public static final String LOG_TAG = ForecastFragment.class.getSimpleName();
     private ForecastAdapter mForecastAdapter;
     private RecyclerView mRecyclerView;
@@ -196,6 +199,15 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                         );
             }
         }, emptyView, mChoiceMode);
+        mForecastAdapter.setPageHandler(new ForecastAdapter.ForecastAdapterPageHandler() {
+            @Override
+            public void onRequestPage(int page, long afterDate, int limit) {
+                String locationSetting = Utility.getPreferredLocation(getActivity());
+                new FetchPageTask(getActivity(), page).execute(
+                        WeatherContract.WeatherEntry.buildWeatherLocationPage(
+                                locationSetting, afterDate, limit));
+            }
+        });
 
         // specify an adapter (see also next example)
         mRecyclerView.setAdapter(mForecastAdapter);
@@ -273,11 +285,10 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // intent can is detailed in the "Common Intents" page of Android's developer site:
         // http://developer.android.com/guide/components/intents-common.html#Maps
         if (null != mForecastAdapter) {
-            Cursor c = mForecastAdapter.getCursor();
-            if (null != c) {
-                c.moveToPosition(0);
-                String posLat = c.getString(COL_COORD_LAT);
-                String posLong = c.getString(COL_COORD_LONG);
+            ForecastRepository.Snapshot snapshot = mForecastAdapter.getSnapshot();
+            if (null != snapshot && !snapshot.days.isEmpty()) {
+                String posLat = snapshot.coordLat;
+                String posLong = snapshot.coordLong;
                 Uri geoLocation = Uri.parse("geo:" + posLat + "," + posLong);
 
                 Intent intent = new Intent(Intent.ACTION_VIEW);
@@ -302,33 +313,20 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
 
     @Override
-    public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
+    public Loader<ForecastLoader.Result> onCreateLoader(int i, Bundle bundle) {
         // This is called when a new Loader needs to be created.  This
         // fragment only uses one loader, so we don't care about checking the id.
 
-        // To only show current and future dates, filter the query to return weather only for
-        // dates after or including today.
-
-        // Sort order:  Ascending, by date.
-        String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
-
-        String locationSetting = Utility.getPreferredLocation(getActivity());
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                locationSetting, System.currentTimeMillis());
-
-        return new CursorLoader(getActivity(),
-                weatherForLocationUri,
-                FORECAST_COLUMNS,
-                null,
-                null,
-                sortOrder);
+        // The loader only holds the first page, from today onwards, which the repository
+        // keeps in memory; the adapter asks for the rest as it scrolls.
+        return new ForecastLoader(getActivity());
     }
 
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        mForecastAdapter.swapCursor(data);
+    public void onLoadFinished(Loader<ForecastLoader.Result> loader, ForecastLoader.Result data) {
+        mForecastAdapter.swapForecast(data);
         updateEmptyView();
-        if ( data.getCount() == 0 ) {
+        if ( data.getRows().isEmpty() ) {
             getActivity().supportStartPostponedEnterTransition();
         } else {
             mRecyclerView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
@@ -338,19 +336,11 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                     // we see Children.
                     if (mRecyclerView.getChildCount() > 0) {
                         mRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                        StartupTrace.markFirstForecastRow(getActivity());
                         int position = mForecastAdapter.getSelectedItemPosition();
                         if (position == RecyclerView.NO_POSITION &&
                                 -1 != mInitialSelectedDate) {
-                            Cursor data = mForecastAdapter.getCursor();
-                            int count = data.getCount();
-                            int dateColumn = data.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-                            for ( int i = 0; i < count; i++ ) {
-                                data.moveToPosition(i);
-                                if ( data.getLong(dateColumn) == mInitialSelectedDate ) {
-                                    position = i;
-                                    break;
-                                }
-                            }
+                            position = mForecastAdapter.getPositionForItemId(mInitialSelectedDate);
                         }
                         if (position == RecyclerView.NO_POSITION) position = 0;
                         // If we don't need to restart the loader, and there's a desired position to restore
@@ -383,8 +373,41 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     }
 
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
-        mForecastAdapter.swapCursor(null);
+    public void onLoaderReset(Loader<ForecastLoader.Result> loader) {
+        mForecastAdapter.swapForecast(null);
+    }
+
+    /*
+        Queries a single page of the forecast and builds its rows off the main thread, then
+        hands them to the adapter.
+     */
+    private class FetchPageTask extends AsyncTask<Uri, Void, List<ForecastRow>> {
+        private final Context mContext;
+        private final int mPage;
+
+        FetchPageTask(Context context, int page) {
+            mContext = context.getApplicationContext();
+            mPage = page;
+        }
+
+        @Override
+        protected List<ForecastRow> doInBackground(Uri... uris) {
+            Cursor cursor = mContext.getContentResolver().query(uris[0], FORECAST_COLUMNS,
+                    null, null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+            if (null == cursor) return null;
+            try {
+                return ForecastRow.fromCursor(mContext, cursor, false);
+            } finally {
+                cursor.close();
+            }
+        }
+
+        @Override
+        protected void onPostExecute(List<ForecastRow> rows) {
+            if (null != mForecastAdapter && isAdded()) {
+                mForecastAdapter.setPage(mPage, rows);
+            }
+        }
     }
 
     public void setUseTodayLayout(boolean useTodayLayout) {
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.support.v7.util.DiffUtil;
+
+import java.util.List;
+
+/**
+ * Loads the forecast list's first page from the {@link ForecastRepository} and converts it
+ * into {@link ForecastRow}s on its background thread.  The snapshot rides along with the rows
+ * so that the fragment can read the location from it.
+ * <p>
+ * Each load is also diffed against the rows that were delivered before it, so the adapter can
+ * apply a reload as individual inserts, removals and changes.
+ */
+public class ForecastLoader extends RepositoryLoader<ForecastLoader.Result> {
+
+    // Written on the main thread when a result is delivered, read by the next load
+    private volatile List<ForecastRow> mDeliveredRows;
+
+    public ForecastLoader(Context context) {
+        super(context);
+    }
+
+    @Override
+    public Result loadInBackground() {
+        ForecastRepository.Snapshot snapshot = getRepository().getForecast();
+        // A cold start can usually take the rows as the last sync formatted them
+        List<ForecastRow> rows = null == snapshot.texts ? null
+                : snapshot.texts.toRows(getContext(), snapshot.days);
+        if (null == rows) rows = ForecastRow.fromDays(getContext(), snapshot.days, true);
+        List<ForecastRow> previousRows = mDeliveredRows;
+        // Both lists are sorted by date, so there are no moves to look for
+        DiffUtil.DiffResult diff = null == previousRows ? null
+                : DiffUtil.calculateDiff(new RowsDiffCallback(previousRows, rows), false);
+        return new Result(snapshot, rows, previousRows, diff);
+    }
+
+    @Override
+    public void deliverResult(Result result) {
+        if (!isReset()) {
+            mDeliveredRows = null == result ? null : result.getRows();
+        }
+        super.deliverResult(result);
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        mDeliveredRows = null;
+    }
+
+    /**
+     * The loaded snapshot together with its rows.
+     */
+    public static class Result {
+        private final ForecastRepository.Snapshot mSnapshot;
+        private final List<ForecastRow> mRows;
+        private final List<ForecastRow> mPreviousRows;
+        private final DiffUtil.DiffResult mDiff;
+
+        Result(ForecastRepository.Snapshot snapshot, List<ForecastRow> rows,
+               List<ForecastRow> previousRows, DiffUtil.DiffResult diff) {
+            mSnapshot = snapshot;
+            mRows = rows;
+            mPreviousRows = previousRows;
+            mDiff = diff;
+        }
+
+        public ForecastRepository.Snapshot getSnapshot() {
+            return mSnapshot;
+        }
+
+        public List<ForecastRow> getRows() {
+            return mRows;
+        }
+
+        /**
+         * The rows the diff was computed against.  It only applies to an adapter that is
+         * still showing exactly these rows.
+         */
+        public List<ForecastRow> getPreviousRows() {
+            return mPreviousRows;
+        }
+
+        /**
+         * The changes from {@link #getPreviousRows()} to {@link #getRows()}, or null if this
+         * is the first load.
+         */
+        public DiffUtil.DiffResult getDiff() {
+            return mDiff;
+        }
+    }
+
+    /**
+     * Days are identified by their date, since a sync replaces each row and gives it a new id.
+     */
+    private static class RowsDiffCallback extends DiffUtil.Callback {
+        private final List<ForecastRow> mOldRows;
+        private final List<ForecastRow> mNewRows;
+
+        RowsDiffCallback(List<ForecastRow> oldRows, List<ForecastRow> newRows) {
+            mOldRows = oldRows;
+            mNewRows = newRows;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldRows.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewRows.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldRows.get(oldItemPosition).date == mNewRows.get(newItemPosition).date;
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldRows.get(oldItemPosition).hasSameContents(mNewRows.get(newItemPosition));
+        }
+    }
+}
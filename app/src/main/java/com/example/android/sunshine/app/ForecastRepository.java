@@ -0,0 +1,340 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds the preferred location's upcoming forecast in memory, so the forecast list and the
+ * detail view share one query instead of each going through the content provider.  Rotating
+ * the screen or opening a day is served from the held {@link Snapshot}.
+ * <p>
+ * Snapshots are immutable.  Any change to the weather table throws the current one away and
+ * tells the registered {@link Listener}s, which reload; the next caller then queries once for
+ * everybody.  A snapshot is also dropped when the location or the current day changes.
+ * <p>
+ * The first load in a process is served from the {@link ForecastSnapshotFile} written by the
+ * last sync, when it covers the forecast being asked for.
+ */
+public final class ForecastRepository {
+
+    // The days held in memory, which is the forecast list's first page
+    static final int SNAPSHOT_DAYS = ForecastAdapter.PAGE_SIZE;
+
+    private static final String[] COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    // These indices are tied to COLUMNS.  If COLUMNS changes, these must change.
+    private static final int COL_WEATHER_ID = 0;
+    private static final int COL_WEATHER_DATE = 1;
+    private static final int COL_WEATHER_DESC = 2;
+    private static final int COL_WEATHER_MAX_TEMP = 3;
+    private static final int COL_WEATHER_MIN_TEMP = 4;
+    private static final int COL_WEATHER_HUMIDITY = 5;
+    private static final int COL_WEATHER_PRESSURE = 6;
+    private static final int COL_WEATHER_WIND_SPEED = 7;
+    private static final int COL_WEATHER_DEGREES = 8;
+    private static final int COL_WEATHER_CONDITION_ID = 9;
+    private static final int COL_COORD_LAT = 10;
+    private static final int COL_COORD_LONG = 11;
+
+    private static ForecastRepository sInstance;
+
+    /**
+     * Told on the main thread whenever the held forecast has been thrown away.
+     */
+    public interface Listener {
+        void onForecastChanged();
+    }
+
+    /**
+     * One day of the forecast, with every column the list and the detail view show.
+     */
+    public static final class Day {
+        public final long id;
+        public final long date;
+        public final int weatherId;
+        public final String shortDescription;
+        public final double high;
+        public final double low;
+        public final float humidity;
+        public final float pressure;
+        public final float windSpeed;
+        public final float degrees;
+
+        Day(long id, long date, int weatherId, String shortDescription, double high,
+            double low, float humidity, float pressure, float windSpeed, float degrees) {
+            this.id = id;
+            this.date = date;
+            this.weatherId = weatherId;
+            this.shortDescription = shortDescription;
+            this.high = high;
+            this.low = low;
+            this.humidity = humidity;
+            this.pressure = pressure;
+            this.windSpeed = windSpeed;
+            this.degrees = degrees;
+        }
+
+        Day(Cursor cursor) {
+            id = cursor.getLong(COL_WEATHER_ID);
+            date = cursor.getLong(COL_WEATHER_DATE);
+            weatherId = cursor.getInt(COL_WEATHER_CONDITION_ID);
+            shortDescription = cursor.getString(COL_WEATHER_DESC);
+            high = cursor.getDouble(COL_WEATHER_MAX_TEMP);
+            low = cursor.getDouble(COL_WEATHER_MIN_TEMP);
+            humidity = cursor.getFloat(COL_WEATHER_HUMIDITY);
+            pressure = cursor.getFloat(COL_WEATHER_PRESSURE);
+            windSpeed = cursor.getFloat(COL_WEATHER_WIND_SPEED);
+            degrees = cursor.getFloat(COL_WEATHER_DEGREES);
+        }
+    }
+
+    /**
+     * The forecast of one location from one day onwards, as read by a single query.
+     */
+    public static final class Snapshot {
+        public final String locationSetting;
+        // The normalized date of the day the snapshot starts at
+        public final long startDate;
+        public final List<Day> days;
+        // Whether days holds every stored day from startDate on, rather than stopping at a limit
+        public final boolean complete;
+        // Only meaningful when there are days, since they come from the joined location row
+        public final String coordLat;
+        public final String coordLong;
+        // The list's text for days, already formatted, when they came from the snapshot file
+        public final ForecastSnapshotFile.Texts texts;
+
+        Snapshot(String locationSetting, long startDate, List<Day> days, boolean complete,
+                 String coordLat, String coordLong) {
+            this(locationSetting, startDate, days, complete, coordLat, coordLong, null);
+        }
+
+        Snapshot(String locationSetting, long startDate, List<Day> days, boolean complete,
+                 String coordLat, String coordLong, ForecastSnapshotFile.Texts texts) {
+            this.locationSetting = locationSetting;
+            this.startDate = startDate;
+            this.days = days;
+            this.complete = complete;
+            this.coordLat = coordLat;
+            this.coordLong = coordLong;
+            this.texts = texts;
+        }
+
+        /**
+         * @return the day with the given normalized date, or null if it isn't held
+         */
+        public Day getDay(long date) {
+            for (int i = 0; i < days.size(); i++) {
+                Day day = days.get(i);
+                if (day.date == date) return day;
+            }
+            return null;
+        }
+    }
+
+    private final Context mContext;
+    private final ArrayList<Listener> mListeners = new ArrayList<Listener>();
+    // Incremented by every invalidation, so a query that raced one isn't kept
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    private final Object mQueryLock = new Object();
+    private volatile Snapshot mSnapshot;
+
+    private ForecastRepository(Context context) {
+        mContext = context;
+        // Registered for the life of the process, like the provider it watches
+        context.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true,
+                new ContentObserver(new Handler(Looper.getMainLooper())) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        invalidate();
+                    }
+                });
+    }
+
+    public static synchronized ForecastRepository getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ForecastRepository(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the preferred location's forecast from today onwards, querying only if the held
+     * snapshot has been invalidated or is for another location or day.  May block on the
+     * query, so must not be called on the main thread.
+     */
+    public Snapshot getForecast() {
+        String locationSetting = Utility.getPreferredLocation(mContext);
+        long startDate = WeatherContract.normalizeDate(System.currentTimeMillis());
+        Snapshot snapshot = mSnapshot;
+        if (isCurrent(snapshot, locationSetting, startDate)) return snapshot;
+
+        synchronized (mQueryLock) {
+            // Another loader may have queried while this one waited
+            snapshot = mSnapshot;
+            if (isCurrent(snapshot, locationSetting, startDate)) return snapshot;
+
+            int generation = mGeneration.get();
+            snapshot = generation == 0 ? readSnapshotFile(locationSetting, startDate) : null;
+            if (snapshot == null) {
+                snapshot = query(mContext, locationSetting, startDate, SNAPSHOT_DAYS);
+            }
+            if (generation == mGeneration.get()) mSnapshot = snapshot;
+            return snapshot;
+        }
+    }
+
+    /**
+     * Returns one day of a location's forecast, from memory when the current snapshot holds
+     * it.  Days outside the snapshot are queried on their own and not kept.  Must not be
+     * called on the main thread.
+     *
+     * @return the day, or null if there's no forecast for it
+     */
+    public Day getDay(String locationSetting, long date) {
+        Snapshot snapshot = getForecast();
+        if (snapshot.locationSetting.equals(locationSetting)) {
+            Day day = snapshot.getDay(date);
+            if (day != null) return day;
+        }
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithDate(locationSetting, date),
+                COLUMNS, null, null, null);
+        if (cursor == null) return null;
+        try {
+            return cursor.moveToFirst() ? new Day(cursor) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Drops the held snapshot and tells the listeners.  Called on the main thread.
+     */
+    void invalidate() {
+        mGeneration.incrementAndGet();
+        mSnapshot = null;
+        // Copied, since a listener may unregister itself
+        Listener[] listeners = mListeners.toArray(new Listener[mListeners.size()]);
+        for (Listener listener : listeners) {
+            listener.onForecastChanged();
+        }
+    }
+
+    /**
+     * Must be called on the main thread.
+     */
+    public void registerListener(Listener listener) {
+        if (!mListeners.contains(listener)) mListeners.add(listener);
+    }
+
+    /**
+     * Must be called on the main thread.
+     */
+    public void unregisterListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    private static boolean isCurrent(Snapshot snapshot, String locationSetting,
+                                     long startDate) {
+        return snapshot != null && snapshot.startDate == startDate
+                && snapshot.locationSetting.equals(locationSetting);
+    }
+
+    /**
+     * Until the first change is seen, the forecast written by the last sync is still what the
+     * database holds, so a cold start can show it without opening the database.
+     *
+     * @return the file's days from startDate on, or null if it can't stand in for a query
+     */
+    private Snapshot readSnapshotFile(String locationSetting, long startDate) {
+        ForecastSnapshotFile.Contents contents = ForecastSnapshotFile.read(mContext);
+        if (contents == null) return null;
+        Snapshot written = contents.snapshot;
+        // Only a file holding every stored day still has all of them once days have passed
+        if (!written.complete || written.startDate > startDate
+                || !written.locationSetting.equals(locationSetting)) {
+            return null;
+        }
+        ArrayList<Day> days = new ArrayList<Day>(written.days.size());
+        for (Day day : written.days) {
+            if (day.date >= startDate && days.size() < SNAPSHOT_DAYS) days.add(day);
+        }
+        // The text only lines up with the days while they still start where the file's do
+        return new Snapshot(locationSetting, startDate, Collections.unmodifiableList(days),
+                days.size() < SNAPSHOT_DAYS, written.coordLat, written.coordLong,
+                written.startDate == startDate ? contents.texts : null);
+    }
+
+    /**
+     * Queries up to limit days of a location's forecast from startDate on, bypassing the held
+     * snapshot.  Must not be called on the main thread.
+     */
+    static Snapshot query(Context context, String locationSetting, long startDate, int limit) {
+        Uri uri = WeatherEntry.withLimit(
+                WeatherEntry.buildWeatherLocationWithStartDate(locationSetting, startDate),
+                limit);
+        Cursor cursor = context.getContentResolver().query(uri, COLUMNS, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        ArrayList<Day> days = new ArrayList<Day>();
+        String coordLat = null;
+        String coordLong = null;
+        if (cursor != null) {
+            try {
+                if (cursor.moveToFirst()) {
+                    coordLat = cursor.getString(COL_COORD_LAT);
+                    coordLong = cursor.getString(COL_COORD_LONG);
+                    do {
+                        days.add(new Day(cursor));
+                    } while (cursor.moveToNext());
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return new Snapshot(locationSetting, startDate, Collections.unmodifiableList(days),
+                days.size() < limit, coordLat, coordLong);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Everything {@link ForecastAdapter} shows for one day, already formatted.  Rows are built off
+ * the main thread from the forecast so that binding a view only assigns fields.
+ */
+public final class ForecastRow {
+    public final long id;
+    public final long date;
+    public final int weatherId;
+    public final int iconResource;
+    public final int artResource;
+    // null when the local art pack is in use
+    public final String artUrl;
+    public final String dateText;
+    // The date as shown on the larger "today" item; only differs from dateText for today
+    public final String longDateText;
+    public final String description;
+    public final String descriptionContentDescription;
+    public final String high;
+    public final String highContentDescription;
+    public final String low;
+    public final String lowContentDescription;
+
+    // The formatted text, in the order getTexts returns it
+    static final int TEXT_COUNT = 8;
+
+    private ForecastRow(Context context, long id, long date, int weatherId, double high,
+                        double low, boolean formatLongToday) {
+        SettingsSnapshot settings = SettingsSnapshot.get(context);
+
+        this.id = id;
+        this.date = date;
+        this.weatherId = weatherId;
+        iconResource = Utility.getIconResourceForWeatherCondition(weatherId);
+        artResource = Utility.getArtResourceForWeatherCondition(weatherId);
+        artUrl = settings.usingLocalGraphics
+                ? null : Utility.getArtUrlForWeatherCondition(context, weatherId);
+
+        dateText = Utility.getFriendlyDayString(context, date, false);
+        longDateText = formatLongToday
+                ? Utility.getFriendlyDayString(context, date, true) : dateText;
+
+        description = Utility.getStringForWeatherCondition(context, weatherId);
+        descriptionContentDescription = context.getString(R.string.a11y_forecast, description);
+
+        this.high = Utility.formatTemperature(context, high);
+        highContentDescription = context.getString(R.string.a11y_high_temp, this.high);
+        this.low = Utility.formatTemperature(context, low);
+        lowContentDescription = context.getString(R.string.a11y_low_temp, this.low);
+    }
+
+    /**
+     * Rebuilds a row from text returned by {@link #getTexts()} earlier, e.g. for the snapshot
+     * file, so nothing is formatted again.  Only the icon and art are looked up.
+     */
+    ForecastRow(Context context, ForecastRepository.Day day, String[] texts) {
+        id = day.id;
+        date = day.date;
+        weatherId = day.weatherId;
+        iconResource = Utility.getIconResourceForWeatherCondition(weatherId);
+        artResource = Utility.getArtResourceForWeatherCondition(weatherId);
+        artUrl = SettingsSnapshot.get(context).usingLocalGraphics
+                ? null : Utility.getArtUrlForWeatherCondition(context, weatherId);
+
+        dateText = texts[0];
+        longDateText = texts[1];
+        description = texts[2];
+        descriptionContentDescription = texts[3];
+        high = texts[4];
+        highContentDescription = texts[5];
+        low = texts[6];
+        lowContentDescription = texts[7];
+    }
+
+    /**
+     * @return every formatted string of the row, {@link #TEXT_COUNT} of them
+     */
+    String[] getTexts() {
+        return new String[]{dateText, longDateText, description, descriptionContentDescription,
+                high, highContentDescription, low, lowContentDescription};
+    }
+
+    /**
+     * Converts every row of a forecast cursor queried with ForecastFragment's columns.  Only
+     * the first row of the first page can be shown with the "today" layout, so the long date
+     * is only formatted for it.  Does string formatting for every row, so call it off the
+     * main thread.
+     */
+    public static ArrayList<ForecastRow> fromCursor(Context context, Cursor cursor,
+                                                    boolean firstPage) {
+        ArrayList<ForecastRow> rows = new ArrayList<ForecastRow>(cursor.getCount());
+        for (int i = 0; cursor.moveToPosition(i); i++) {
+            rows.add(new ForecastRow(context,
+                    cursor.getLong(ForecastFragment.COL_WEATHER_ID),
+                    cursor.getLong(ForecastFragment.COL_WEATHER_DATE),
+                    cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID),
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP),
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP),
+                    firstPage && i == 0));
+        }
+        return rows;
+    }
+
+    /**
+     * Converts the days of a {@link ForecastRepository} snapshot, like
+     * {@link #fromCursor(Context, Cursor, boolean)}.
+     */
+    public static ArrayList<ForecastRow> fromDays(Context context,
+                                                  List<ForecastRepository.Day> days,
+                                                  boolean firstPage) {
+        ArrayList<ForecastRow> rows = new ArrayList<ForecastRow>(days.size());
+        for (int i = 0; i < days.size(); i++) {
+            ForecastRepository.Day day = days.get(i);
+            rows.add(new ForecastRow(context, day.id, day.date, day.weatherId, day.high, day.low,
+                    firstPage && i == 0));
+        }
+        return rows;
+    }
+
+    /**
+     * Whether the two rows would be shown identically.  The row id is left out: replacing a
+     * day's forecast gives it a new id, and the date already identifies the item.
+     */
+    public boolean hasSameContents(ForecastRow other) {
+        return date == other.date
+                && weatherId == other.weatherId
+                && equal(artUrl, other.artUrl)
+                && dateText.equals(other.dateText)
+                && longDateText.equals(other.longDateText)
+                && description.equals(other.description)
+                && high.equals(other.high)
+                && low.equals(other.low);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.support.v4.util.AtomicFile;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The forecast as of the last sync, kept in a small binary file so that the first screen, the
+ * Today widget and the watch can show it with one file read instead of opening the database.
+ * It holds the preferred location's days from the day of the sync on, with every string the
+ * forecast list shows for them already formatted, in the units and locale of the time.
+ * <p>
+ * The file is replaced atomically after every successful sync and deleted before a sync
+ * changes the database, so it never claims to be newer than the data it was made from.  A
+ * missing, unreadable or outdated file reads as null, and callers fall back to the provider.
+ */
+public final class ForecastSnapshotFile {
+    private static final String LOG_TAG = ForecastSnapshotFile.class.getSimpleName();
+
+    private static final String FILE_NAME = "forecast_snapshot.bin";
+    // "SNAP", then the format version, which must change whenever the layout below does
+    private static final int MAGIC = 0x534e4150;
+    private static final int VERSION = 2;
+
+    // Today plus the next two weeks
+    public static final int DAYS = 15;
+
+    /**
+     * The text of every stored day's {@link ForecastRow}, and what it was formatted for.
+     */
+    public static final class Texts {
+        private final boolean mIsMetric;
+        private final String mLocale;
+        // The normalized date of the day it was formatted on, since "Today" and "Tomorrow"
+        // are relative to it
+        private final long mFormattedDay;
+        private final String[][] mTexts;
+
+        Texts(boolean isMetric, String locale, long formattedDay, String[][] texts) {
+            mIsMetric = isMetric;
+            mLocale = locale;
+            mFormattedDay = formattedDay;
+            mTexts = texts;
+        }
+
+        boolean isFormattedFor(Context context) {
+            return mIsMetric == Utility.isMetric(context)
+                    && mLocale.equals(Locale.getDefault().toString());
+        }
+
+        /**
+         * @param days the stored days from the first on, or fewer
+         * @return the days' rows without formatting anything, or null if the units, the locale
+         * or the day have changed since the text was formatted
+         */
+        public List<ForecastRow> toRows(Context context, List<ForecastRepository.Day> days) {
+            if (!isFormattedFor(context)
+                    || mFormattedDay != WeatherContract.normalizeDate(System.currentTimeMillis())
+                    || days.size() > mTexts.length) {
+                return null;
+            }
+            ArrayList<ForecastRow> rows = new ArrayList<ForecastRow>(days.size());
+            for (int i = 0; i < days.size(); i++) {
+                rows.add(new ForecastRow(context, days.get(i), mTexts[i]));
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * What the file holds.
+     */
+    public static final class Contents {
+        public final ForecastRepository.Snapshot snapshot;
+        // System.currentTimeMillis() when the file was written
+        public final long writtenAt;
+        public final Texts texts;
+
+        Contents(ForecastRepository.Snapshot snapshot, long writtenAt, Texts texts) {
+            this.snapshot = snapshot;
+            this.writtenAt = writtenAt;
+            this.texts = texts;
+        }
+
+        /**
+         * @return the index of the first day on or after today, or -1 if every day has passed
+         */
+        public int getTodayIndex() {
+            long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+            for (int i = 0; i < snapshot.days.size(); i++) {
+                if (snapshot.days.get(i).date >= today) return i;
+            }
+            return -1;
+        }
+
+        /**
+         * @return the day's formatted high, formatted again only if the units or the locale
+         * have changed
+         */
+        public String getHighText(Context context, int index) {
+            return texts.isFormattedFor(context) ? texts.mTexts[index][4]
+                    : Utility.formatTemperature(context, snapshot.days.get(index).high);
+        }
+
+        /**
+         * @return the day's formatted low, formatted again only if the units or the locale
+         * have changed
+         */
+        public String getLowText(Context context, int index) {
+            return texts.isFormattedFor(context) ? texts.mTexts[index][6]
+                    : Utility.formatTemperature(context, snapshot.days.get(index).low);
+        }
+    }
+
+    private ForecastSnapshotFile() {
+    }
+
+    private static AtomicFile getFile(Context context) {
+        return new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+    }
+
+    /**
+     * Replaces the file with the preferred location's forecast from today on, as the database
+     * holds it now.  Call it after a sync has stored a new forecast; it queries the provider,
+     * so not on the main thread.
+     */
+    public static void update(Context context) {
+        String locationSetting = Utility.getPreferredLocation(context);
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        write(context, ForecastRepository.query(context, locationSetting, today, DAYS));
+    }
+
+    static void write(Context context, ForecastRepository.Snapshot snapshot) {
+        // Formatted as the list would show them, so a cold start formats nothing
+        List<ForecastRow> rows = ForecastRow.fromDays(context, snapshot.days, true);
+        long now = System.currentTimeMillis();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(now);
+            out.writeBoolean(Utility.isMetric(context));
+            out.writeUTF(Locale.getDefault().toString());
+            out.writeLong(WeatherContract.normalizeDate(now));
+            out.writeUTF(snapshot.locationSetting);
+            out.writeLong(snapshot.startDate);
+            out.writeBoolean(snapshot.complete);
+            out.writeUTF(snapshot.coordLat == null ? "" : snapshot.coordLat);
+            out.writeUTF(snapshot.coordLong == null ? "" : snapshot.coordLong);
+            out.writeInt(snapshot.days.size());
+            for (int i = 0; i < snapshot.days.size(); i++) {
+                ForecastRepository.Day day = snapshot.days.get(i);
+                out.writeLong(day.id);
+                out.writeLong(day.date);
+                out.writeInt(day.weatherId);
+                out.writeUTF(day.shortDescription == null ? "" : day.shortDescription);
+                out.writeDouble(day.high);
+                out.writeDouble(day.low);
+                out.writeFloat(day.humidity);
+                out.writeFloat(day.pressure);
+                out.writeFloat(day.windSpeed);
+                out.writeFloat(day.degrees);
+                for (String text : rows.get(i).getTexts()) {
+                    out.writeUTF(text);
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            // Writing to memory doesn't fail
+            throw new IllegalStateException(e);
+        }
+
+        AtomicFile file = getFile(context);
+        FileOutputStream stream = null;
+        try {
+            stream = file.startWrite();
+            bytes.writeTo(stream);
+            file.finishWrite(stream);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to write the forecast snapshot", e);
+            if (stream != null) file.failWrite(stream);
+            delete(context);
+        }
+    }
+
+    /**
+     * Removes the file, e.g. before the data it was made from changes.
+     */
+    public static void delete(Context context) {
+        getFile(context).delete();
+    }
+
+    /**
+     * Reads the file in one go.  Must not be called on the main thread.
+     *
+     * @return the file's contents, or null if there is no usable file
+     */
+    public static Contents read(Context context) {
+        byte[] data;
+        try {
+            data = getFile(context).readFully();
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Unable to read the forecast snapshot", e);
+            return null;
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            long writtenAt = in.readLong();
+            boolean isMetric = in.readBoolean();
+            String locale = in.readUTF();
+            long formattedDay = in.readLong();
+            String locationSetting = in.readUTF();
+            long startDate = in.readLong();
+            boolean complete = in.readBoolean();
+            String coordLat = in.readUTF();
+            String coordLong = in.readUTF();
+            int count = in.readInt();
+            if (count < 0 || count > DAYS) return null;
+
+            ArrayList<ForecastRepository.Day> days = new ArrayList<ForecastRepository.Day>(count);
+            String[][] texts = new String[count][ForecastRow.TEXT_COUNT];
+            for (int i = 0; i < count; i++) {
+                days.add(new ForecastRepository.Day(in.readLong(), in.readLong(), in.readInt(),
+                        in.readUTF(), in.readDouble(), in.readDouble(), in.readFloat(),
+                        in.readFloat(), in.readFloat(), in.readFloat()));
+                for (int j = 0; j < ForecastRow.TEXT_COUNT; j++) {
+                    texts[i][j] = in.readUTF();
+                }
+            }
+            Texts formatted = new Texts(isMetric, locale, formattedDay, texts);
+            ForecastRepository.Snapshot snapshot = new ForecastRepository.Snapshot(
+                    locationSetting, startDate, Collections.unmodifiableList(days), complete,
+                    coordLat.length() == 0 ? null : coordLat,
+                    coordLong.length() == 0 ? null : coordLong, formatted);
+            return new Contents(snapshot, writtenAt, formatted);
+        } catch (IOException e) {
+            // Truncated or otherwise corrupt
+            Log.w(LOG_TAG, "Discarding an unreadable forecast snapshot", e);
+            return null;
+        }
+    }
+}
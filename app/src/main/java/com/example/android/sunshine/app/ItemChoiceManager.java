@@ -28,8 +28,9 @@ import android.widget.AbsListView;
 import android.widget.Checkable;
 
 /**
- * The ItemChoiceManager class keeps track of which positions have been selected.  Note that it
- * doesn't take advantage of new adapter features to track changes in the underlying data.
+ * The ItemChoiceManager class keeps track of which positions have been selected.  Fine-grained
+ * adapter notifications move the checked positions along with their items; after a full
+ * data set change, checked items are found again by their stable ids.
  */
 public class ItemChoiceManager {
     private final String LOG_TAG = MainActivity.class.getSimpleName();
@@ -44,8 +45,63 @@ public class ItemChoiceManager {
             if (mAdapter != null && mAdapter.hasStableIds())
                 confirmCheckedPositionsById(mAdapter.getItemCount());
         }
+
+        @Override
+        public void onItemRangeInserted(final int positionStart, final int itemCount) {
+            remapCheckedPositions(new PositionMapping() {
+                @Override
+                public int map(int position) {
+                    return position >= positionStart ? position + itemCount : position;
+                }
+            });
+        }
+
+        @Override
+        public void onItemRangeRemoved(final int positionStart, final int itemCount) {
+            remapCheckedPositions(new PositionMapping() {
+                @Override
+                public int map(int position) {
+                    if (position < positionStart) return position;
+                    if (position < positionStart + itemCount) return RecyclerView.NO_POSITION;
+                    return position - itemCount;
+                }
+            });
+        }
+
+        // RecyclerView only ever moves one item at a time
+        @Override
+        public void onItemRangeMoved(final int fromPosition, final int toPosition, int itemCount) {
+            remapCheckedPositions(new PositionMapping() {
+                @Override
+                public int map(int position) {
+                    if (position == fromPosition) return toPosition;
+                    if (fromPosition < toPosition && position > fromPosition && position <= toPosition)
+                        return position - 1;
+                    if (toPosition < fromPosition && position >= toPosition && position < fromPosition)
+                        return position + 1;
+                    return position;
+                }
+            });
+        }
     };
 
+    /**
+     * Implemented by adapters with stable ids that can find an id's position without a search.
+     */
+    public static interface ItemIdLookup {
+        /**
+         * @return the position of the item with the given id, or RecyclerView.NO_POSITION
+         */
+        int getPositionForItemId(long id);
+    }
+
+    private static interface PositionMapping {
+        /**
+         * @return where the item at position is now, or RecyclerView.NO_POSITION if it is gone
+         */
+        int map(int position);
+    }
+
     private ItemChoiceManager() {
     }
 
@@ -53,6 +109,7 @@ public class ItemChoiceManager {
 
     public ItemChoiceManager(RecyclerView.Adapter adapter) {
         mAdapter = adapter;
+        mAdapter.registerAdapterDataObserver(mAdapterDataObserver);
     }
 
     /**
@@ -154,10 +211,49 @@ public class ItemChoiceManager {
         mCheckedIdStates.clear();
     }
 
+    /**
+     * Moves every checked position, and the last known position of every checked id, to
+     * where the mapping says the item went.  Only touches checked items, so the cost does not
+     * depend on the size of the data set.
+     */
+    private void remapCheckedPositions(PositionMapping mapping) {
+        if (mCheckStates.size() > 0) {
+            SparseBooleanArray checkStates = new SparseBooleanArray(mCheckStates.size());
+            for (int i = 0; i < mCheckStates.size(); i++) {
+                if (!mCheckStates.valueAt(i)) continue;
+                int position = mapping.map(mCheckStates.keyAt(i));
+                if (position != RecyclerView.NO_POSITION) checkStates.put(position, true);
+            }
+            mCheckStates = checkStates;
+        }
+        for (int i = mCheckedIdStates.size() - 1; i >= 0; i--) {
+            int position = mapping.map(mCheckedIdStates.valueAt(i));
+            if (position == RecyclerView.NO_POSITION) {
+                mCheckedIdStates.removeAt(i);
+            } else {
+                mCheckedIdStates.setValueAt(i, position);
+            }
+        }
+    }
+
     void confirmCheckedPositionsById(int oldItemCount) {
         // Clear out the positional check states, we'll rebuild it below from IDs.
         mCheckStates.clear();
 
+        if (mAdapter instanceof ItemIdLookup) {
+            ItemIdLookup lookup = (ItemIdLookup) mAdapter;
+            for (int i = mCheckedIdStates.size() - 1; i >= 0; i--) {
+                int position = lookup.getPositionForItemId(mCheckedIdStates.keyAt(i));
+                if (position == RecyclerView.NO_POSITION) {
+                    mCheckedIdStates.removeAt(i);
+                } else {
+                    mCheckStates.put(position, true);
+                    mCheckedIdStates.setValueAt(i, position);
+                }
+            }
+            return;
+        }
+
         for (int checkedIndex = 0; checkedIndex < mCheckedIdStates.size(); checkedIndex++) {
             final long id = mCheckedIdStates.keyAt(checkedIndex);
             final int lastPos = mCheckedIdStates.valueAt(checkedIndex);
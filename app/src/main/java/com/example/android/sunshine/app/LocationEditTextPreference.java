@@ -18,17 +18,24 @@ package com.example.android.sunshine.app;
 import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.Dialog;
+import android.app.SearchManager;
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.database.Cursor;
 import android.os.Bundle;
 import android.preference.EditTextPreference;
+import android.support.v4.widget.SimpleCursorAdapter;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.util.AttributeSet;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AutoCompleteTextView;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.FilterQueryProvider;
+
+import com.example.android.sunshine.app.data.WeatherContract;
 
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
@@ -38,8 +45,13 @@ import com.google.android.gms.common.GoogleApiAvailability;
 
 public class LocationEditTextPreference extends EditTextPreference {
     static final private int DEFAULT_MINIMUM_LOCATION_LENGTH = 2;
+    static final private int SUGGESTION_LIMIT = 10;
     private int mMinLength;
 
+    // Replaces the preference's own EditText in the dialog so known locations can be suggested
+    // as the user types.  Its text is copied back to getEditText() when the dialog closes.
+    private AutoCompleteTextView mSearchText;
+
     public LocationEditTextPreference(Context context, AttributeSet attrs) {
         super(context, attrs);
         TypedArray a = context.getTheme().obtainStyledAttributes(
@@ -103,11 +115,61 @@ public class LocationEditTextPreference extends EditTextPreference {
         return view;
     }*/
 
+    @Override
+    protected void onAddEditTextToDialogView(View dialogView, EditText editText) {
+        final Context context = getContext();
+        mSearchText = new AutoCompleteTextView(context);
+        mSearchText.setInputType(editText.getInputType());
+        mSearchText.setSingleLine();
+        mSearchText.setThreshold(mMinLength);
+        mSearchText.setText(editText.getText());
+        mSearchText.setSelection(mSearchText.getText().length());
+
+        // The filter runs its queries on a background thread, so the provider's full-text
+        // search never blocks typing.
+        SimpleCursorAdapter adapter = new SimpleCursorAdapter(context,
+                android.R.layout.simple_list_item_2, null,
+                new String[]{SearchManager.SUGGEST_COLUMN_TEXT_1, SearchManager.SUGGEST_COLUMN_TEXT_2},
+                new int[]{android.R.id.text1, android.R.id.text2}, 0);
+        adapter.setFilterQueryProvider(new FilterQueryProvider() {
+            @Override
+            public Cursor runQuery(CharSequence constraint) {
+                if (null == constraint) return null;
+                return context.getContentResolver().query(
+                        WeatherContract.LocationSearchEntry.buildSuggestUri(
+                                constraint.toString(), SUGGESTION_LIMIT),
+                        null, null, null, null);
+            }
+        });
+        adapter.setCursorToStringConverter(new SimpleCursorAdapter.CursorToStringConverter() {
+            @Override
+            public CharSequence convertToString(Cursor cursor) {
+                return cursor.getString(cursor.getColumnIndex(SearchManager.SUGGEST_COLUMN_QUERY));
+            }
+        });
+        mSearchText.setAdapter(adapter);
+
+        super.onAddEditTextToDialogView(dialogView, mSearchText);
+    }
+
+    @Override
+    protected void onDialogClosed(boolean positiveResult) {
+        if (null != mSearchText) {
+            if (positiveResult) {
+                getEditText().setText(mSearchText.getText());
+            }
+            // Closes the last suggestion cursor
+            ((SimpleCursorAdapter) mSearchText.getAdapter()).changeCursor(null);
+            mSearchText = null;
+        }
+        super.onDialogClosed(positiveResult);
+    }
+
     @Override
     protected void showDialog(Bundle state) {
         super.showDialog(state);
 
-        EditText et = getEditText();
+        EditText et = null != mSearchText ? mSearchText : getEditText();
         et.addTextChangedListener(new TextWatcher() {
 
 
@@ -15,9 +15,11 @@
  */
 package com.example.android.sunshine.app;
 
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.v4.app.ActivityCompat;
@@ -48,6 +50,7 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        StartupTrace.start();
         super.onCreate(savedInstanceState);
         mLocation = Utility.getPreferredLocation(this);
         Uri contentUri = getIntent() != null ? getIntent().getData() : null;
@@ -89,7 +92,25 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
                     WeatherContract.WeatherEntry.getDateFromUri(contentUri));
         }
 
-        SunshineSyncAdapter.initializeSyncAdapter(this);
+        // Neither the sync account nor GCM is needed to show the stored forecast, so they wait
+        // until it's on screen
+        StartupTrace.runAfterFirstFrame(this, new Runnable() {
+            @Override
+            public void run() {
+                if (!isFinishing()) initializeServices();
+            }
+        });
+    }
+
+    private void initializeServices() {
+        // Looking up the account goes through the account manager service
+        final Context context = getApplicationContext();
+        AsyncTask.execute(new Runnable() {
+            @Override
+            public void run() {
+                SunshineSyncAdapter.initializeSyncAdapter(context);
+            }
+        });
 
         // If Google Play Services is up to date, we'll want to register GCM. If it is not, we'll
         // skip the registration and this device will not receive any downstream messages from
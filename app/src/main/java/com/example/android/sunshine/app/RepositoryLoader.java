@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.support.v4.content.AsyncTaskLoader;
+
+/**
+ * A loader that reads from the {@link ForecastRepository} and reloads whenever the repository
+ * drops its forecast, the way a CursorLoader reloads when its cursor's content changes.
+ * The last result is kept, so a restarted activity gets it back without loading again.
+ */
+public abstract class RepositoryLoader<D> extends AsyncTaskLoader<D>
+        implements ForecastRepository.Listener {
+
+    private final ForecastRepository mRepository;
+    private D mData;
+
+    public RepositoryLoader(Context context) {
+        super(context);
+        mRepository = ForecastRepository.getInstance(context);
+    }
+
+    protected ForecastRepository getRepository() {
+        return mRepository;
+    }
+
+    @Override
+    public void onForecastChanged() {
+        onContentChanged();
+    }
+
+    @Override
+    public void deliverResult(D data) {
+        if (isReset()) return;
+        mData = data;
+        if (isStarted()) super.deliverResult(data);
+    }
+
+    @Override
+    protected void onStartLoading() {
+        mRepository.registerListener(this);
+        if (mData != null) deliverResult(mData);
+        if (takeContentChanged() || mData == null) forceLoad();
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        mRepository.unregisterListener(this);
+        mData = null;
+    }
+}
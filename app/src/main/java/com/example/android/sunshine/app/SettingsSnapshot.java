@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import java.util.HashSet;
+
+/**
+ * An immutable copy of the user settings that are read while binding views: units, art pack
+ * and location.  One preference listener replaces the snapshot whenever one of them changes,
+ * and a locale change replaces it too since the temperature format is localized, so readers
+ * only ever do a volatile read and never touch the preference map or resources.
+ */
+public final class SettingsSnapshot {
+
+    private static volatile SettingsSnapshot sCurrent;
+
+    // SharedPreferences only keeps weak references to its listeners
+    private static SharedPreferences.OnSharedPreferenceChangeListener sListener;
+    private static BroadcastReceiver sLocaleReceiver;
+
+    /** Incremented every time the settings change, so callers can tell stale data apart. */
+    public final int version;
+    public final boolean isMetric;
+    public final String artPack;
+    public final boolean usingLocalGraphics;
+    public final String location;
+    public final boolean isLocationLatLonAvailable;
+    public final float latitude;
+    public final float longitude;
+    /** The localized format for a temperature, e.g. "%1.0f°". */
+    public final String temperatureFormat;
+
+    private SettingsSnapshot(Context context, SharedPreferences prefs, int version) {
+        this.version = version;
+
+        String metric = context.getString(R.string.pref_units_metric);
+        isMetric = metric.equals(
+                prefs.getString(context.getString(R.string.pref_units_key), metric));
+
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        artPack = prefs.getString(context.getString(R.string.pref_art_pack_key), sunshineArtPack);
+        usingLocalGraphics = artPack.equals(sunshineArtPack);
+
+        location = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+        String latitudeKey = context.getString(R.string.pref_location_latitude);
+        String longitudeKey = context.getString(R.string.pref_location_longitude);
+        isLocationLatLonAvailable = prefs.contains(latitudeKey) && prefs.contains(longitudeKey);
+        latitude = prefs.getFloat(latitudeKey, Utility.DEFAULT_LATLONG);
+        longitude = prefs.getFloat(longitudeKey, Utility.DEFAULT_LATLONG);
+
+        temperatureFormat = context.getString(R.string.format_temperature);
+    }
+
+    /**
+     * Returns the current settings.  The first call reads the preferences and starts listening
+     * for changes; every later call is a single volatile read.
+     */
+    public static SettingsSnapshot get(Context context) {
+        SettingsSnapshot snapshot = sCurrent;
+        if (snapshot == null) {
+            snapshot = load(context.getApplicationContext());
+        }
+        return snapshot;
+    }
+
+    private static synchronized SettingsSnapshot load(final Context context) {
+        if (sCurrent == null) {
+            final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+            // Other keys, like the location status the sync writes on every run, don't matter
+            final HashSet<String> keys = new HashSet<String>();
+            keys.add(context.getString(R.string.pref_units_key));
+            keys.add(context.getString(R.string.pref_art_pack_key));
+            keys.add(context.getString(R.string.pref_location_key));
+            keys.add(context.getString(R.string.pref_location_latitude));
+            keys.add(context.getString(R.string.pref_location_longitude));
+            sListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+                    if (keys.contains(key)) refresh(context, prefs);
+                }
+            };
+            prefs.registerOnSharedPreferenceChangeListener(sListener);
+            sLocaleReceiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context receiverContext, Intent intent) {
+                    refresh(context, prefs);
+                }
+            };
+            context.registerReceiver(sLocaleReceiver,
+                    new IntentFilter(Intent.ACTION_LOCALE_CHANGED));
+            sCurrent = new SettingsSnapshot(context, prefs, 0);
+        }
+        return sCurrent;
+    }
+
+    private static synchronized void refresh(Context context, SharedPreferences prefs) {
+        sCurrent = new SettingsSnapshot(context, prefs, sCurrent.version + 1);
+    }
+}
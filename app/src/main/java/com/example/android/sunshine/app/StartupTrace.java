@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+/**
+ * Measures the cold start of {@link MainActivity}: the time to its first frame, and the time
+ * to the first forecast row being on screen.  Both are logged under this class's name and
+ * counted from the activity's onCreate; the platform's own launch timing, which includes
+ * starting the process, is completed by reporting the activity fully drawn.  Only the first
+ * launch in a process is measured, so rotations and returning to the app don't overwrite it.
+ * <p>
+ * Also lets startup work that the first frame doesn't need wait until after it.  Everything
+ * here is called on the main thread.
+ */
+public final class StartupTrace {
+    private static final String LOG_TAG = StartupTrace.class.getSimpleName();
+
+    private static final long NOT_REACHED = -1;
+
+    private static long sStartUptime = NOT_REACHED;
+    private static long sFirstFrameMillis = NOT_REACHED;
+    private static long sFirstRowMillis = NOT_REACHED;
+
+    private StartupTrace() {
+    }
+
+    /**
+     * Starts the trace.  Call it first thing in MainActivity.onCreate; only the first call in
+     * a process has any effect.
+     */
+    static void start() {
+        if (sStartUptime != NOT_REACHED) return;
+        sStartUptime = SystemClock.uptimeMillis();
+    }
+
+    /**
+     * Runs the given work on the main thread once the activity's first frame has been drawn.
+     * Its first frame is recorded as well, if it's the one being traced.
+     */
+    static void runAfterFirstFrame(Activity activity, final Runnable work) {
+        final View decorView = activity.getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(
+                new ViewTreeObserver.OnPreDrawListener() {
+                    @Override
+                    public boolean onPreDraw() {
+                        decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                        if (sFirstFrameMillis == NOT_REACHED && sStartUptime != NOT_REACHED) {
+                            sFirstFrameMillis = SystemClock.uptimeMillis() - sStartUptime;
+                            Log.i(LOG_TAG, "First frame after " + sFirstFrameMillis + " ms");
+                        }
+                        // Queued behind the traversal that draws this frame
+                        decorView.post(work);
+                        return true;
+                    }
+                });
+    }
+
+    /**
+     * Records that the first forecast row is on screen, and tells the platform the activity
+     * is fully drawn.
+     */
+    static void markFirstForecastRow(Activity activity) {
+        if (sFirstRowMillis != NOT_REACHED || sStartUptime == NOT_REACHED) return;
+        sFirstRowMillis = SystemClock.uptimeMillis() - sStartUptime;
+        Log.i(LOG_TAG, "First forecast row after " + sFirstRowMillis + " ms");
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            reportFullyDrawn(activity);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static void reportFullyDrawn(Activity activity) {
+        activity.reportFullyDrawn();
+    }
+
+    /**
+     * @return milliseconds from the start to the first frame, or -1 if it hasn't been drawn
+     */
+    public static long getFirstFrameMillis() {
+        return sFirstFrameMillis;
+    }
+
+    /**
+     * @return milliseconds from the start to the first forecast row, or -1 if none has been
+     * shown
+     */
+    public static long getFirstForecastRowMillis() {
+        return sFirstRowMillis;
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Offline nearest-city lookup over a memory-mapped gazetteer file.
+ *
+ * The file is a k-d tree over the cities' positions as points on the unit sphere, laid out
+ * implicitly: the root of any range of records is the record in its middle, its left subtree
+ * the records before it and its right subtree the records after it.  Working on the sphere
+ * rather than in lat/lon means there is no special case at the poles or the date line, and
+ * the straight-line distance between two points orders cities exactly like the great-circle
+ * distance.  Nothing but the mapping itself is kept in memory; see {@link GazetteerBuilder}
+ * for the layout.
+ */
+public class Gazetteer {
+    private static final String LOG_TAG = Gazetteer.class.getSimpleName();
+
+    static final int MAGIC = 0x53475a31; // "SGZ1"
+    static final int HEADER_SIZE = 12;
+    // x, y, z as floats, then latitude and longitude in microdegrees, then the name's offset
+    // into the name table and its length in bytes
+    static final int RECORD_SIZE = 28;
+
+    static final String ASSET_NAME = "cities.tsv";
+    // Bump when the asset or the file layout changes so installed copies are rebuilt
+    static final String FILE_NAME = "gazetteer-1.bin";
+
+    private static final double EARTH_RADIUS_KM = 6371.0;
+
+    private static Gazetteer sInstance;
+
+    private final ByteBuffer mBuffer;
+    private final int mCount;
+    private final int mNamesOffset;
+
+    // Search state, guarded by this
+    private int mBestIndex;
+    private float mBestDistance;
+    private float mQueryX, mQueryY, mQueryZ;
+    private int[] mResults;
+    private int mResultCount;
+
+    Gazetteer(ByteBuffer buffer) throws IOException {
+        mBuffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a gazetteer file");
+        }
+        mCount = buffer.getInt(4);
+        mNamesOffset = buffer.getInt(8);
+    }
+
+    /**
+     * Maps the given gazetteer file into memory.
+     */
+    public static Gazetteer open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            // The mapping stays valid after the channel is closed
+            return new Gazetteer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns the gazetteer built from the bundled city list, building its file on first use.
+     * This does disk I/O the first time, so call it off the main thread.  Returns null if the
+     * file could not be built.
+     */
+    public static synchronized Gazetteer getInstance(Context context) {
+        if (sInstance == null) {
+            File file = new File(context.getFilesDir(), FILE_NAME);
+            try {
+                if (!file.exists()) {
+                    InputStream in = context.getAssets().open(ASSET_NAME);
+                    try {
+                        GazetteerBuilder.build(in, file);
+                    } finally {
+                        in.close();
+                    }
+                }
+                sInstance = open(file);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Unable to load the gazetteer", e);
+                file.delete();
+            }
+        }
+        return sInstance;
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * Returns the number of bytes mapped for the gazetteer.  These are file-backed pages that
+     * the system can drop at any time, not part of the Java heap.
+     */
+    public int getMappedSize() {
+        return mBuffer.capacity();
+    }
+
+    /**
+     * Returns the index of the city nearest to the given position, or -1 if there are none.
+     */
+    public synchronized int findNearest(double latitude, double longitude) {
+        setQuery(latitude, longitude);
+        mBestIndex = -1;
+        mBestDistance = Float.MAX_VALUE;
+        searchNearest(0, mCount, 0);
+        return mBestIndex;
+    }
+
+    /**
+     * Collects the indexes of the cities within radiusKm of the given position into results,
+     * in no particular order, stopping once it is full.  Returns the number of indexes written.
+     */
+    public synchronized int findWithinRadius(double latitude, double longitude, double radiusKm,
+                                             int[] results) {
+        setQuery(latitude, longitude);
+        // Compare squared chord lengths so the search never needs a square root
+        double angle = Math.min(radiusKm / EARTH_RADIUS_KM, Math.PI);
+        double chord = 2 * Math.sin(angle / 2);
+        mResults = results;
+        mResultCount = 0;
+        searchRadius(0, mCount, 0, (float) (chord * chord));
+        mResults = null;
+        return mResultCount;
+    }
+
+    public String getName(int index) {
+        int base = HEADER_SIZE + index * RECORD_SIZE;
+        int offset = mNamesOffset + mBuffer.getInt(base + 20);
+        int length = mBuffer.getInt(base + 24);
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = mBuffer.get(offset + i);
+        }
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    public double getLatitude(int index) {
+        return mBuffer.getInt(HEADER_SIZE + index * RECORD_SIZE + 12) / 1e6;
+    }
+
+    public double getLongitude(int index) {
+        return mBuffer.getInt(HEADER_SIZE + index * RECORD_SIZE + 16) / 1e6;
+    }
+
+    /**
+     * Returns the great-circle distance between a city and a position, in kilometers.
+     */
+    public double distanceKm(int index, double latitude, double longitude) {
+        double lat1 = Math.toRadians(getLatitude(index));
+        double lat2 = Math.toRadians(latitude);
+        double dLat = lat2 - lat1;
+        double dLon = Math.toRadians(longitude - getLongitude(index));
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
+                Math.cos(lat1) * Math.cos(lat2) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private void setQuery(double latitude, double longitude) {
+        double lat = Math.toRadians(latitude);
+        double lon = Math.toRadians(longitude);
+        mQueryX = (float) (Math.cos(lat) * Math.cos(lon));
+        mQueryY = (float) (Math.cos(lat) * Math.sin(lon));
+        mQueryZ = (float) Math.sin(lat);
+    }
+
+    private void searchNearest(int lo, int hi, int depth) {
+        if (lo >= hi) return;
+        int mid = (lo + hi) >>> 1;
+        int base = HEADER_SIZE + mid * RECORD_SIZE;
+        float dx = mQueryX - mBuffer.getFloat(base);
+        float dy = mQueryY - mBuffer.getFloat(base + 4);
+        float dz = mQueryZ - mBuffer.getFloat(base + 8);
+        float distance = dx * dx + dy * dy + dz * dz;
+        if (distance < mBestDistance) {
+            mBestDistance = distance;
+            mBestIndex = mid;
+        }
+
+        float split = depth % 3 == 0 ? dx : depth % 3 == 1 ? dy : dz;
+        // Descend on the query's side of the splitting plane first, and only cross it if the
+        // plane is closer than the best city found so far
+        if (split < 0) {
+            searchNearest(lo, mid, depth + 1);
+            if (split * split < mBestDistance) searchNearest(mid + 1, hi, depth + 1);
+        } else {
+            searchNearest(mid + 1, hi, depth + 1);
+            if (split * split < mBestDistance) searchNearest(lo, mid, depth + 1);
+        }
+    }
+
+    private void searchRadius(int lo, int hi, int depth, float radius) {
+        if (lo >= hi || mResultCount == mResults.length) return;
+        int mid = (lo + hi) >>> 1;
+        int base = HEADER_SIZE + mid * RECORD_SIZE;
+        float dx = mQueryX - mBuffer.getFloat(base);
+        float dy = mQueryY - mBuffer.getFloat(base + 4);
+        float dz = mQueryZ - mBuffer.getFloat(base + 8);
+        if (dx * dx + dy * dy + dz * dz <= radius && mResultCount < mResults.length) {
+            mResults[mResultCount++] = mid;
+        }
+
+        float split = depth % 3 == 0 ? dx : depth % 3 == 1 ? dy : dz;
+        if (split < 0 || split * split <= radius) searchRadius(lo, mid, depth + 1, radius);
+        if (split >= 0 || split * split <= radius) searchRadius(mid + 1, hi, depth + 1, radius);
+    }
+}
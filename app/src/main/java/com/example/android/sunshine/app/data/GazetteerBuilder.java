@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Writes the gazetteer file read by {@link Gazetteer}.
+ *
+ * Layout, big-endian:
+ *   int magic, int city count, int offset of the name table
+ *   one record per city, in k-d tree order:
+ *     float x, y, z; int latitude and longitude in microdegrees; int name offset, name length
+ *   the UTF-8 names, "City, CC", back to back
+ */
+final class GazetteerBuilder {
+
+    private GazetteerBuilder() {
+    }
+
+    static final class City {
+        final String mName;
+        final double mLatitude;
+        final double mLongitude;
+        final float[] mPoint = new float[3];
+
+        City(String name, double latitude, double longitude) {
+            mName = name;
+            mLatitude = latitude;
+            mLongitude = longitude;
+            double lat = Math.toRadians(latitude);
+            double lon = Math.toRadians(longitude);
+            mPoint[0] = (float) (Math.cos(lat) * Math.cos(lon));
+            mPoint[1] = (float) (Math.cos(lat) * Math.sin(lon));
+            mPoint[2] = (float) Math.sin(lat);
+        }
+    }
+
+    /**
+     * Builds a gazetteer file from tab separated lines of name, country code, latitude and
+     * longitude.
+     */
+    static void build(InputStream tsv, File out) throws IOException {
+        ArrayList<City> cities = new ArrayList<City>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(tsv, "UTF-8"));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] fields = line.split("\t");
+            if (fields.length < 4) continue;
+            try {
+                cities.add(new City(fields[0] + ", " + fields[1],
+                        Double.parseDouble(fields[2]), Double.parseDouble(fields[3])));
+            } catch (NumberFormatException e) {
+                throw new IOException("Bad gazetteer line: " + line);
+            }
+        }
+        write(cities.toArray(new City[cities.size()]), out);
+    }
+
+    /**
+     * Writes the given cities to a gazetteer file, reordering the array into k-d tree order.
+     * The file is written next to out and renamed into place, so readers never see a partial
+     * file.
+     */
+    static void write(City[] cities, File out) throws IOException {
+        arrange(cities, 0, cities.length, 0);
+
+        byte[][] names = new byte[cities.length][];
+        for (int i = 0; i < cities.length; i++) {
+            names[i] = cities[i].mName.getBytes("UTF-8");
+        }
+
+        File temp = new File(out.getPath() + ".tmp");
+        DataOutputStream data = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            data.writeInt(Gazetteer.MAGIC);
+            data.writeInt(cities.length);
+            data.writeInt(Gazetteer.HEADER_SIZE + cities.length * Gazetteer.RECORD_SIZE);
+            int nameOffset = 0;
+            for (int i = 0; i < cities.length; i++) {
+                City city = cities[i];
+                data.writeFloat(city.mPoint[0]);
+                data.writeFloat(city.mPoint[1]);
+                data.writeFloat(city.mPoint[2]);
+                data.writeInt((int) Math.round(city.mLatitude * 1e6));
+                data.writeInt((int) Math.round(city.mLongitude * 1e6));
+                data.writeInt(nameOffset);
+                data.writeInt(names[i].length);
+                nameOffset += names[i].length;
+            }
+            for (byte[] name : names) {
+                data.write(name);
+            }
+        } finally {
+            data.close();
+        }
+        if (!temp.renameTo(out)) {
+            temp.delete();
+            throw new IOException("Unable to write " + out);
+        }
+    }
+
+    // Puts the median of [lo, hi) along the axis for this depth in the middle of the range,
+    // with smaller coordinates before it, and recurses into both halves.
+    private static void arrange(City[] cities, int lo, int hi, int depth) {
+        if (hi - lo <= 1) return;
+        final int axis = depth % 3;
+        Arrays.sort(cities, lo, hi, new Comparator<City>() {
+            @Override
+            public int compare(City lhs, City rhs) {
+                return Float.compare(lhs.mPoint[axis], rhs.mPoint[axis]);
+            }
+        });
+        int mid = (lo + hi) >>> 1;
+        arrange(cities, lo, mid, depth + 1);
+        arrange(cities, mid + 1, hi, depth + 1);
+    }
+}
@@ -15,6 +15,7 @@
  */
 package com.example.android.sunshine.app.data;
 
+import android.app.SearchManager;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.net.Uri;
@@ -43,6 +44,10 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_ARCHIVE = "archive";
+    public static final String PATH_ARCHIVE_COMPACT = "archive_compact";
+    public static final String PATH_AGGREGATE = "aggregate";
+    public static final String PATH_LOCATION_SEARCH = "location_search";
 
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
@@ -86,6 +91,93 @@ public class WeatherContract {
         }
     }
 
+    /*
+        Inner class that defines the full-text index over the location table.  Each row's docid
+        is the _id of the location it indexes; triggers on the location table keep it current.
+     */
+    public static final class LocationSearchEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_LOCATION_SEARCH).build();
+
+        // Search suggestions in the format SearchManager expects, for the location preference
+        public static final Uri SUGGEST_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(SearchManager.SUGGEST_URI_PATH_QUERY).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_LOCATION_SEARCH;
+
+        public static final String TABLE_NAME = "location_search";
+
+        public static final String COLUMN_CITY_NAME = LocationEntry.COLUMN_CITY_NAME;
+        public static final String COLUMN_LOCATION_SETTING = LocationEntry.COLUMN_LOCATION_SETTING;
+        // The city name as a single token, with NAME_KEY_SEPARATORS removed, so that "new lon"
+        // can be looked up as a prefix of the whole name ("newlon*") rather than of a word
+        public static final String COLUMN_NAME_KEY = "name_key";
+
+        // Characters the full-text tokenizer would split a city name on, as city names use them
+        public static final String NAME_KEY_SEPARATORS = " -'.,()/";
+
+        public static final String PARAM_LIMIT = "limit";
+
+        public static Uri buildSearchUri(String query, int limit) {
+            return CONTENT_URI.buildUpon().appendPath(query)
+                    .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit)).build();
+        }
+
+        public static Uri buildSuggestUri(String query, int limit) {
+            return SUGGEST_URI.buildUpon().appendPath(query)
+                    .appendQueryParameter(SearchManager.SUGGEST_PARAMETER_LIMIT,
+                            Integer.toString(limit)).build();
+        }
+
+        public static String getQueryFromUri(Uri uri) {
+            return uri.getPathSegments().size() > 1 ? uri.getLastPathSegment() : "";
+        }
+
+        public static String getLimitFromUri(Uri uri) {
+            String limit = uri.getQueryParameter(PARAM_LIMIT);
+            if (null == limit) limit = uri.getQueryParameter(SearchManager.SUGGEST_PARAMETER_LIMIT);
+            return null != limit && limit.length() > 0 ? limit : null;
+        }
+
+        /*
+            Turns what the user typed into an FTS MATCH expression in which every word is a
+            prefix term, so "san fr" becomes "san* fr*".  Characters the FTS query syntax would
+            interpret are dropped.  Returns null if nothing searchable is left.
+         */
+        public static String toMatchExpression(String query) {
+            StringBuilder match = new StringBuilder();
+            for (String token : query.split("[^\\p{L}\\p{N}]+")) {
+                if (token.length() == 0) continue;
+                if (match.length() > 0) match.append(' ');
+                match.append(token).append('*');
+            }
+            return match.length() > 0 ? match.toString() : null;
+        }
+
+        /*
+            Returns the name key of a city name, as stored in COLUMN_NAME_KEY.
+         */
+        public static String toNameKey(String cityName) {
+            StringBuilder key = new StringBuilder(cityName.length());
+            for (int i = 0; i < cityName.length(); i++) {
+                char c = cityName.charAt(i);
+                if (NAME_KEY_SEPARATORS.indexOf(c) < 0) key.append(c);
+            }
+            return key.toString();
+        }
+
+        /*
+            Turns what the user typed into the name key it would be a prefix of, dropping
+            everything but letters and digits.  Returns null if nothing searchable is left.
+         */
+        public static String toNameKeyQuery(String query) {
+            String key = query.replaceAll("[^\\p{L}\\p{N}]+", "");
+            return key.length() > 0 ? key : null;
+        }
+    }
+
     /* Inner class that defines the table contents of the weather table */
     public static final class WeatherEntry implements BaseColumns {
 
@@ -126,10 +218,31 @@ public class WeatherContract {
         // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
         public static final String COLUMN_DEGREES = "degrees";
 
+        // Query parameters used to page through long lists of weather rows.  Paging is keyset
+        // based: a page holds at most PARAM_LIMIT rows whose date is strictly after
+        // PARAM_AFTER_DATE, so fetching the next page never has to skip over earlier rows.
+        public static final String PARAM_LIMIT = "limit";
+        public static final String PARAM_AFTER_DATE = "after";
+
+        // When set on a delete, the rows are copied into the archive table before being removed
+        public static final String PARAM_ARCHIVE = "archive";
+
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
 
+        /*
+            A delete through this uri moves the matching rows into the ArchiveEntry table instead
+            of discarding them.
+         */
+        public static Uri buildArchivingDeleteUri() {
+            return CONTENT_URI.buildUpon().appendQueryParameter(PARAM_ARCHIVE, "1").build();
+        }
+
+        public static boolean isArchivingUri(Uri uri) {
+            return "1".equals(uri.getQueryParameter(PARAM_ARCHIVE));
+        }
+
         /*
             Student: This is the buildWeatherLocation function you filled in.
          */
@@ -149,6 +262,25 @@ public class WeatherContract {
                     .appendPath(Long.toString(normalizeDate(date))).build();
         }
 
+        /*
+            Builds a uri for one page of weather rows for a location.  afterDate is the (already
+            normalized) date of the last row of the previous page, or 0 for the first page.
+         */
+        public static Uri buildWeatherLocationPage(String locationSetting, long afterDate,
+                                                   int limit) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendQueryParameter(PARAM_AFTER_DATE, Long.toString(afterDate))
+                    .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit)).build();
+        }
+
+        /*
+            Restricts an existing weather uri to at most limit rows.
+         */
+        public static Uri withLimit(Uri uri, int limit) {
+            return uri.buildUpon()
+                    .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit)).build();
+        }
+
         public static String getLocationSettingFromUri(Uri uri) {
             return uri.getPathSegments().get(1);
         }
@@ -164,5 +296,236 @@ public class WeatherContract {
             else
                 return 0;
         }
+
+        public static long getAfterDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_AFTER_DATE);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return 0;
+        }
+
+        /*
+            Returns the row limit carried by the uri, or null when the uri is not paged.  The value
+            is returned as a String so it can be handed straight to SQLiteQueryBuilder.
+         */
+        public static String getLimitFromUri(Uri uri) {
+            String limitString = uri.getQueryParameter(PARAM_LIMIT);
+            if (null != limitString && limitString.length() > 0)
+                return Integer.toString(Integer.parseInt(limitString));
+            else
+                return null;
+        }
+    }
+
+    /*
+        Inner class that defines the table contents of the weather history archive.
+
+        The weather table is only a cache of the current forecast, and is wiped on every schema
+        upgrade.  Observed days are moved here instead of being deleted, keyed by the location
+        setting string rather than the location row id so they outlive the location cache.
+        Rows carry a month partition key (yyyyMM, UTC) so old months can be selected and
+        compacted as a whole.  Once compacted, a row summarizes COLUMN_DAYS consecutive days.
+     */
+    public static final class ArchiveEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_ARCHIVE).build();
+
+        public static final Uri COMPACT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_ARCHIVE_COMPACT).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_ARCHIVE;
+
+        public static final String TABLE_NAME = "weather_archive";
+
+        public static final String COLUMN_LOCATION_SETTING = "location_setting";
+        // Date of the first day covered by the row, normalized like WeatherEntry.COLUMN_DATE
+        public static final String COLUMN_DATE = "date";
+        // Partition key: year * 100 + month of COLUMN_DATE, in the zone it was normalized in
+        public static final String COLUMN_MONTH = "month";
+        // Number of days summarized by this row.  1 until the row has been compacted.
+        public static final String COLUMN_DAYS = "days";
+
+        // The same measurements as WeatherEntry.  For compacted rows min/max are the extremes of
+        // the period, the weather id is the most frequent one and the rest are averages.
+        public static final String COLUMN_WEATHER_ID = WeatherEntry.COLUMN_WEATHER_ID;
+        public static final String COLUMN_SHORT_DESC = WeatherEntry.COLUMN_SHORT_DESC;
+        public static final String COLUMN_MIN_TEMP = WeatherEntry.COLUMN_MIN_TEMP;
+        public static final String COLUMN_MAX_TEMP = WeatherEntry.COLUMN_MAX_TEMP;
+        public static final String COLUMN_HUMIDITY = WeatherEntry.COLUMN_HUMIDITY;
+        public static final String COLUMN_PRESSURE = WeatherEntry.COLUMN_PRESSURE;
+        public static final String COLUMN_WIND_SPEED = WeatherEntry.COLUMN_WIND_SPEED;
+        public static final String COLUMN_DEGREES = WeatherEntry.COLUMN_DEGREES;
+
+        public static final String PARAM_START_DATE = "start";
+        public static final String PARAM_END_DATE = "end";
+        public static final String PARAM_BEFORE_DATE = "before";
+
+        /*
+            Builds a uri for the archived days of a location between startDate and endDate,
+            both inclusive.
+         */
+        public static Uri buildArchiveLocationWithRange(String locationSetting, long startDate,
+                                                        long endDate) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendQueryParameter(PARAM_START_DATE, Long.toString(normalizeDate(startDate)))
+                    .appendQueryParameter(PARAM_END_DATE, Long.toString(normalizeDate(endDate)))
+                    .build();
+        }
+
+        /*
+            A delete through this uri downsamples every daily row in a month that ends before
+            the given date into weekly rows.
+         */
+        public static Uri buildCompactUri(long beforeDate) {
+            return COMPACT_URI.buildUpon()
+                    .appendQueryParameter(PARAM_BEFORE_DATE, Long.toString(beforeDate)).build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        public static long getStartDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_START_DATE);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return 0;
+        }
+
+        public static long getEndDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_END_DATE);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return Long.MAX_VALUE;
+        }
+
+        public static long getBeforeDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_BEFORE_DATE);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return 0;
+        }
+
+        /*
+            Returns the partition key for a date, e.g. 201412 for December 20th, 2014.
+         */
+        public static int getMonthKey(long date) {
+            Time time = new Time();
+            time.set(date);
+            return time.year * 100 + time.month + 1;
+        }
+    }
+
+    /*
+        Inner class that defines the table contents of the aggregates table.
+
+        Each row rolls up the days of one location that fall in one calendar week (Monday to
+        Sunday) or one calendar month, counted in local days like normalizeDate.  Rows are rebuilt inside the same transaction that
+        inserts weather, from the current weather rows plus archived days, so a forecast that is
+        revised on a later sync replaces its old contribution instead of being counted twice.
+     */
+    public static final class AggregateEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_AGGREGATE).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_AGGREGATE;
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_AGGREGATE;
+
+        public static final String TABLE_NAME = "weather_aggregate";
+
+        // Period types, also used as the last path segment of the uri
+        public static final String PERIOD_WEEK = "week";
+        public static final String PERIOD_MONTH = "month";
+
+        // Column with the foreign key into the location table.
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // One of PERIOD_WEEK or PERIOD_MONTH
+        public static final String COLUMN_PERIOD = "period";
+        // Normalized date of the first day of the period
+        public static final String COLUMN_PERIOD_START = "period_start";
+        // Number of days of the period we have data for
+        public static final String COLUMN_DAYS = "days";
+        // Lowest minimum and highest maximum temperature over the period
+        public static final String COLUMN_MIN_TEMP = "min";
+        public static final String COLUMN_MAX_TEMP = "max";
+        // Averages of the daily minimum and maximum temperatures
+        public static final String COLUMN_AVG_MIN_TEMP = "avg_min";
+        public static final String COLUMN_AVG_MAX_TEMP = "avg_max";
+        // Number of days with thunderstorms, drizzle, rain or snow
+        public static final String COLUMN_PRECIPITATION_DAYS = "precipitation_days";
+        // The most frequent weather id over the period
+        public static final String COLUMN_WEATHER_ID = "weather_id";
+
+        public static final String PARAM_DATE = "date";
+
+        /*
+            Builds a uri for every period of the given type for a location.
+         */
+        public static Uri buildAggregateLocation(String locationSetting, String period) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting).appendPath(period).build();
+        }
+
+        /*
+            Builds a uri for the single period of the given type containing date.
+         */
+        public static Uri buildAggregateLocationWithDate(String locationSetting, String period,
+                                                         long date) {
+            return buildAggregateLocation(locationSetting, period).buildUpon()
+                    .appendQueryParameter(PARAM_DATE, Long.toString(
+                            getPeriodStart(period, normalizeDate(date)))).build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        public static String getPeriodFromUri(Uri uri) {
+            return uri.getPathSegments().get(2);
+        }
+
+        public static long getPeriodStartFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_DATE);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return 0;
+        }
+
+        /*
+            Returns the first day of the period of the given type containing a normalized date,
+            normalized the same way.
+         */
+        public static long getPeriodStart(String period, long date) {
+            Time time = new Time();
+            time.set(date);
+            int julianDay = Time.getJulianDay(date, time.gmtoff);
+            if (PERIOD_MONTH.equals(period)) {
+                julianDay -= time.monthDay - 1;
+            } else {
+                julianDay -= ((julianDay - Time.MONDAY_BEFORE_JULIAN_EPOCH) % 7 + 7) % 7;
+            }
+            return time.setJulianDay(julianDay);
+        }
+
+        /*
+            Returns the first day after the period of the given type starting at periodStart.
+         */
+        public static long getPeriodEnd(String period, long periodStart) {
+            Time time = new Time();
+            time.set(periodStart);
+            int julianDay = Time.getJulianDay(periodStart, time.gmtoff);
+            // Counted in days rather than millis, since a period can span a DST change
+            int days = PERIOD_MONTH.equals(period) ? time.getActualMaximum(Time.MONTH_DAY) : 7;
+            return time.setJulianDay(julianDay + days);
+        }
     }
 }
@@ -18,22 +18,43 @@ package com.example.android.sunshine.app.data;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
 
+import com.example.android.sunshine.app.data.WeatherContract.AggregateEntry;
+import com.example.android.sunshine.app.data.WeatherContract.ArchiveEntry;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationSearchEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
 /**
  * Manages a local database for weather data.
  */
 public class WeatherDbHelper extends SQLiteOpenHelper {
+    private static final String LOG_TAG = WeatherDbHelper.class.getSimpleName();
 
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 7;
 
     static final String DATABASE_NAME = "weather.db";
 
+    // Bundled cities are indexed for search with docids from here up, clear of the location
+    // _ids the synced locations are indexed with
+    static final long BUNDLED_CITY_DOCID_BASE = 1L << 32;
+
+    private final Context mContext;
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        mContext = context.getApplicationContext();
     }
 
     @Override
@@ -79,20 +100,199 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
                 WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);";
 
+        // Rollups of the weather table per location and week or month.  Rows are rebuilt by
+        // the provider whenever weather for one of their days changes, and from the archive
+        // when their location is inserted.
+        final String SQL_CREATE_AGGREGATE_TABLE = "CREATE TABLE " + AggregateEntry.TABLE_NAME + " (" +
+                AggregateEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                AggregateEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                AggregateEntry.COLUMN_PERIOD + " TEXT NOT NULL, " +
+                AggregateEntry.COLUMN_PERIOD_START + " INTEGER NOT NULL, " +
+                AggregateEntry.COLUMN_DAYS + " INTEGER NOT NULL, " +
+                AggregateEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+                AggregateEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+                AggregateEntry.COLUMN_AVG_MIN_TEMP + " REAL NOT NULL, " +
+                AggregateEntry.COLUMN_AVG_MAX_TEMP + " REAL NOT NULL, " +
+                AggregateEntry.COLUMN_PRECIPITATION_DAYS + " INTEGER NOT NULL, " +
+                AggregateEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL, " +
+
+                " FOREIGN KEY (" + AggregateEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+
+                // One row per period, so a rebuilt period simply replaces the old one
+                " UNIQUE (" + AggregateEntry.COLUMN_LOC_KEY + ", " +
+                AggregateEntry.COLUMN_PERIOD + ", " +
+                AggregateEntry.COLUMN_PERIOD_START + ") ON CONFLICT REPLACE);";
+
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_AGGREGATE_TABLE);
+        createLocationSearchTable(sqLiteDatabase);
+        createArchiveTable(sqLiteDatabase);
+    }
+
+    private void createLocationSearchTable(SQLiteDatabase sqLiteDatabase) {
+        // FTS3 rather than FTS4 because FTS4 needs API 11.  Prefix queries ("lon*") are answered
+        // from the full-text index instead of a scan of the location table, and matches come
+        // back in docid order, which is also the order they are ranked in within each group.
+        final String SQL_CREATE_LOCATION_SEARCH_TABLE = "CREATE VIRTUAL TABLE " +
+                LocationSearchEntry.TABLE_NAME + " USING fts3(" +
+                LocationSearchEntry.COLUMN_CITY_NAME + ", " +
+                LocationSearchEntry.COLUMN_LOCATION_SETTING + ", " +
+                LocationSearchEntry.COLUMN_NAME_KEY + ");";
+
+        // Keep the index in step with the location table, using the location _id as the docid
+        final String SQL_INDEX_NEW_LOCATION = "INSERT INTO " + LocationSearchEntry.TABLE_NAME +
+                " (docid, " + LocationSearchEntry.COLUMN_CITY_NAME + ", " +
+                LocationSearchEntry.COLUMN_LOCATION_SETTING + ", " +
+                LocationSearchEntry.COLUMN_NAME_KEY + ") VALUES (new." +
+                LocationEntry._ID + ", new." + LocationEntry.COLUMN_CITY_NAME + ", new." +
+                LocationEntry.COLUMN_LOCATION_SETTING + ", " +
+                toNameKeySql("new." + LocationEntry.COLUMN_CITY_NAME) + "); ";
+        final String SQL_UNINDEX_OLD_LOCATION = "DELETE FROM " + LocationSearchEntry.TABLE_NAME +
+                " WHERE docid = old." + LocationEntry._ID + "; ";
+
+        sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_SEARCH_TABLE);
+        sqLiteDatabase.execSQL("CREATE TRIGGER " + LocationSearchEntry.TABLE_NAME +
+                "_insert AFTER INSERT ON " + LocationEntry.TABLE_NAME +
+                " BEGIN " + SQL_INDEX_NEW_LOCATION + "END;");
+        sqLiteDatabase.execSQL("CREATE TRIGGER " + LocationSearchEntry.TABLE_NAME +
+                "_update AFTER UPDATE ON " + LocationEntry.TABLE_NAME +
+                " BEGIN " + SQL_UNINDEX_OLD_LOCATION + SQL_INDEX_NEW_LOCATION + "END;");
+        sqLiteDatabase.execSQL("CREATE TRIGGER " + LocationSearchEntry.TABLE_NAME +
+                "_delete AFTER DELETE ON " + LocationEntry.TABLE_NAME +
+                " BEGIN " + SQL_UNINDEX_OLD_LOCATION + "END;");
+
+        indexBundledCities(sqLiteDatabase);
+    }
+
+    /*
+        Adds the bundled city list, the one the gazetteer is built from, to the search index so
+        suggestions work offline and for cities that were never synced.  Each is suggested with
+        "City, CC" as its location setting.
+     */
+    private void indexBundledCities(SQLiteDatabase sqLiteDatabase) {
+        try {
+            InputStream in = mContext.getAssets().open(Gazetteer.ASSET_NAME);
+            try {
+                indexCities(sqLiteDatabase, in, BUNDLED_CITY_DOCID_BASE);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // Search still covers the synced locations
+            Log.e(LOG_TAG, "Unable to index the bundled cities", e);
+        }
+    }
+
+    /*
+        The SQL equivalent of LocationSearchEntry.toNameKey for a column.
+     */
+    private static String toNameKeySql(String column) {
+        String sql = column;
+        for (char separator : LocationSearchEntry.NAME_KEY_SEPARATORS.toCharArray()) {
+            sql = "replace(" + sql + ", '" + (separator == '\'' ? "''" : String.valueOf(separator)) + "', '')";
+        }
+        return sql;
+    }
+
+    /*
+        Indexes tab separated lines of name, country code, latitude and longitude, numbering
+        their docids from firstDocid.  Shorter names get lower docids, so search, which ranks
+        matches of the same kind by docid, suggests "Paris" before "Paris Township" without
+        sorting.  Returns the number of cities indexed.
+     */
+    static int indexCities(SQLiteDatabase sqLiteDatabase, InputStream tsv, long firstDocid)
+            throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(tsv, "UTF-8"));
+        ArrayList<String[]> cities = new ArrayList<String[]>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] fields = line.split("\t");
+            if (fields.length >= 2) cities.add(fields);
+        }
+        // Stable, so names of the same length keep the file's order
+        Collections.sort(cities, new Comparator<String[]>() {
+            @Override
+            public int compare(String[] lhs, String[] rhs) {
+                return lhs[0].length() - rhs[0].length();
+            }
+        });
+
+        SQLiteStatement insert = sqLiteDatabase.compileStatement("INSERT INTO " +
+                LocationSearchEntry.TABLE_NAME + " (docid, " +
+                LocationSearchEntry.COLUMN_CITY_NAME + ", " +
+                LocationSearchEntry.COLUMN_LOCATION_SETTING + ", " +
+                LocationSearchEntry.COLUMN_NAME_KEY + ") VALUES (?, ?, ?, ?)");
+        int count = 0;
+        sqLiteDatabase.beginTransaction();
+        try {
+            for (String[] fields : cities) {
+                insert.bindLong(1, firstDocid + count);
+                insert.bindString(2, fields[0]);
+                insert.bindString(3, fields[0] + ", " + fields[1]);
+                insert.bindString(4, LocationSearchEntry.toNameKey(fields[0]));
+                insert.executeInsert();
+                count++;
+            }
+            sqLiteDatabase.setTransactionSuccessful();
+        } finally {
+            sqLiteDatabase.endTransaction();
+            insert.close();
+        }
+        return count;
+    }
+
+    private void createArchiveTable(SQLiteDatabase sqLiteDatabase) {
+        // The archive is not a cache, so it is created only if missing and survives upgrades.
+        final String SQL_CREATE_ARCHIVE_TABLE = "CREATE TABLE IF NOT EXISTS " +
+                ArchiveEntry.TABLE_NAME + " (" +
+                ArchiveEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                ArchiveEntry.COLUMN_LOCATION_SETTING + " TEXT NOT NULL, " +
+                ArchiveEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+                ArchiveEntry.COLUMN_MONTH + " INTEGER NOT NULL, " +
+                ArchiveEntry.COLUMN_DAYS + " INTEGER NOT NULL DEFAULT 1, " +
+                ArchiveEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
+                ArchiveEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
+
+                ArchiveEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+                ArchiveEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+
+                ArchiveEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
+                ArchiveEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
+                ArchiveEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
+                ArchiveEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
+
+                // One row per day (or compacted period) per location.  The unique index this
+                // creates is ordered by location first, so a date range for one location is a
+                // single contiguous index scan no matter how many locations are archived.
+                " UNIQUE (" + ArchiveEntry.COLUMN_LOCATION_SETTING + ", " +
+                ArchiveEntry.COLUMN_DATE + ") ON CONFLICT REPLACE);";
+
+        // Lets compaction select whole months without touching newer partitions
+        final String SQL_CREATE_ARCHIVE_MONTH_INDEX = "CREATE INDEX IF NOT EXISTS " +
+                ArchiveEntry.TABLE_NAME + "_month_idx ON " + ArchiveEntry.TABLE_NAME + " (" +
+                ArchiveEntry.COLUMN_MONTH + ", " + ArchiveEntry.COLUMN_DAYS + ");";
+
+        sqLiteDatabase.execSQL(SQL_CREATE_ARCHIVE_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_ARCHIVE_MONTH_INDEX);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
+        // The location, weather, aggregate and search tables are only a cache for online data
+        // and the bundled city list, so their upgrade policy is to simply to discard the data
+        // and start over.  The archive table holds history we can't download again and is left
+        // alone by onCreate.  The aggregates of archived days are rebuilt by the provider as
+        // each location is inserted again.
         // Note that this only fires if you change the version number for your database.
         // It does NOT depend on the version number for your application.
         // If you want to update the schema without wiping data, commenting out the next 2 lines
         // should be your top priority before modifying this method.
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + AggregateEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationSearchEntry.TABLE_NAME);
         onCreate(sqLiteDatabase);
     }
 }
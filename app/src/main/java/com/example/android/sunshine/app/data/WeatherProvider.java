@@ -16,13 +16,24 @@
 package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
+import android.app.SearchManager;
 import android.content.ContentProvider;
+import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.util.SparseIntArray;
+
+import com.example.android.sunshine.app.data.WeatherContract.AggregateEntry;
+import com.example.android.sunshine.app.data.WeatherContract.ArchiveEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationSearchEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 
 public class WeatherProvider extends ContentProvider {
 
@@ -34,8 +45,49 @@ public class WeatherProvider extends ContentProvider {
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
+    static final int ARCHIVE = 400;
+    static final int ARCHIVE_WITH_LOCATION = 401;
+    static final int ARCHIVE_COMPACT = 402;
+    static final int AGGREGATE = 500;
+    static final int AGGREGATE_WITH_LOCATION_AND_PERIOD = 501;
+    static final int LOCATION_SEARCH = 600;
+    static final int SEARCH_SUGGEST = 601;
+
+    private static final String DEFAULT_SEARCH_LIMIT = "20";
+
+    private static final String[] AGGREGATE_PERIODS = {
+            AggregateEntry.PERIOD_WEEK, AggregateEntry.PERIOD_MONTH};
 
     private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+    private static final SQLiteQueryBuilder sAggregateByLocationSettingQueryBuilder;
+    private static final SQLiteQueryBuilder sLocationSearchQueryBuilder;
+    private static final SQLiteQueryBuilder sSearchSuggestQueryBuilder;
+
+    // The first matches, in docid order, of one ranking group: SELECT docid, <group> FROM
+    // location_search WHERE <column> MATCH ? ORDER BY docid LIMIT ?.  The full-text index
+    // produces them in that order, so no more than the limit are ever read.
+    private static String rankingGroupSql(int group, String column) {
+        return "SELECT * FROM (SELECT docid AS ranked_id, " + group + " AS search_rank FROM " +
+                LocationSearchEntry.TABLE_NAME + " WHERE " + column +
+                " MATCH ? ORDER BY docid LIMIT ?)";
+    }
+
+    // Exact city names first, then city name prefixes, then any word prefix, including those
+    // of the location setting.  Within a group synced locations come before bundled cities,
+    // and bundled cities shorter names first, since that is their docid order.  The arguments
+    // are the exact name key, its prefix expression and the MATCH expression, each followed
+    // by the limit.
+    private static final String sLocationSearchRankedTables =
+            LocationSearchEntry.TABLE_NAME + " INNER JOIN (SELECT ranked_id, " +
+                    "MIN(search_rank) AS search_rank FROM (" +
+                    rankingGroupSql(0, LocationSearchEntry.COLUMN_NAME_KEY) + " UNION ALL " +
+                    rankingGroupSql(1, LocationSearchEntry.COLUMN_NAME_KEY) + " UNION ALL " +
+                    rankingGroupSql(2, LocationSearchEntry.TABLE_NAME) +
+                    ") GROUP BY ranked_id) AS ranked ON " + LocationSearchEntry.TABLE_NAME +
+                    ".docid = ranked.ranked_id";
+
+    private static final String sLocationSearchRanking =
+            "ranked.search_rank ASC, ranked.ranked_id ASC";
 
     static{
         sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
@@ -49,8 +101,50 @@ public class WeatherProvider extends ContentProvider {
                         "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY +
                         " = " + WeatherContract.LocationEntry.TABLE_NAME +
                         "." + WeatherContract.LocationEntry._ID);
+
+        //weather_aggregate INNER JOIN location ON weather_aggregate.location_id = location._id
+        sAggregateByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
+        sAggregateByLocationSettingQueryBuilder.setTables(
+                AggregateEntry.TABLE_NAME + " INNER JOIN " +
+                        WeatherContract.LocationEntry.TABLE_NAME +
+                        " ON " + AggregateEntry.TABLE_NAME +
+                        "." + AggregateEntry.COLUMN_LOC_KEY +
+                        " = " + WeatherContract.LocationEntry.TABLE_NAME +
+                        "." + WeatherContract.LocationEntry._ID);
+
+        // Both search builders read the full-text table and expose its docid, which is the
+        // location _id, as the _id column.
+        HashMap<String, String> searchColumns = new HashMap<String, String>();
+        searchColumns.put(LocationSearchEntry._ID, "docid AS " + LocationSearchEntry._ID);
+        searchColumns.put(LocationSearchEntry.COLUMN_CITY_NAME, LocationSearchEntry.COLUMN_CITY_NAME);
+        searchColumns.put(LocationSearchEntry.COLUMN_LOCATION_SETTING,
+                LocationSearchEntry.COLUMN_LOCATION_SETTING);
+        sLocationSearchQueryBuilder = new SQLiteQueryBuilder();
+        sLocationSearchQueryBuilder.setTables(sLocationSearchRankedTables);
+        sLocationSearchQueryBuilder.setProjectionMap(searchColumns);
+
+        HashMap<String, String> suggestColumns = new HashMap<String, String>();
+        suggestColumns.put(LocationSearchEntry._ID, "docid AS " + LocationSearchEntry._ID);
+        suggestColumns.put(SearchManager.SUGGEST_COLUMN_TEXT_1,
+                LocationSearchEntry.COLUMN_CITY_NAME + " AS " + SearchManager.SUGGEST_COLUMN_TEXT_1);
+        suggestColumns.put(SearchManager.SUGGEST_COLUMN_TEXT_2,
+                LocationSearchEntry.COLUMN_LOCATION_SETTING + " AS " +
+                        SearchManager.SUGGEST_COLUMN_TEXT_2);
+        suggestColumns.put(SearchManager.SUGGEST_COLUMN_QUERY,
+                LocationSearchEntry.COLUMN_LOCATION_SETTING + " AS " +
+                        SearchManager.SUGGEST_COLUMN_QUERY);
+        sSearchSuggestQueryBuilder = new SQLiteQueryBuilder();
+        sSearchSuggestQueryBuilder.setTables(sLocationSearchRankedTables);
+        sSearchSuggestQueryBuilder.setProjectionMap(suggestColumns);
     }
 
+    private static final String[] SEARCH_SUGGEST_COLUMNS = {
+            LocationSearchEntry._ID,
+            SearchManager.SUGGEST_COLUMN_TEXT_1,
+            SearchManager.SUGGEST_COLUMN_TEXT_2,
+            SearchManager.SUGGEST_COLUMN_QUERY
+    };
+
     //location.location_setting = ?
     private static final String sLocationSettingSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
@@ -62,6 +156,12 @@ public class WeatherProvider extends ContentProvider {
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
 
+    //location.location_setting = ? AND date > ?
+    private static final String sLocationSettingAfterDateSelection =
+            WeatherContract.LocationEntry.TABLE_NAME+
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " > ? ";
+
     //location.location_setting = ? AND date = ?
     private static final String sLocationSettingAndDaySelection =
             WeatherContract.LocationEntry.TABLE_NAME +
@@ -71,11 +171,17 @@ public class WeatherProvider extends ContentProvider {
     private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
+        long afterDate = WeatherContract.WeatherEntry.getAfterDateFromUri(uri);
+        String limit = WeatherContract.WeatherEntry.getLimitFromUri(uri);
 
         String[] selectionArgs;
         String selection;
 
-        if (startDate == 0) {
+        if (afterDate != 0) {
+            // Keyset paging: continue strictly after the last row of the previous page
+            selectionArgs = new String[]{locationSetting, Long.toString(afterDate)};
+            selection = sLocationSettingAfterDateSelection;
+        } else if (startDate == 0) {
             selection = sLocationSettingSelection;
             selectionArgs = new String[]{locationSetting};
         } else {
@@ -83,7 +189,148 @@ public class WeatherProvider extends ContentProvider {
             selection = sLocationSettingWithStartDateSelection;
         }
 
+        // A page only makes sense in date order, so default to it when limiting
+        if (limit != null && sortOrder == null) {
+            sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+        }
+
         return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                selection,
+                selectionArgs,
+                null,
+                null,
+                sortOrder,
+                limit
+        );
+    }
+
+    //weather_archive.location_setting = ? AND date >= ? AND date <= ?
+    private static final String sArchiveLocationRangeSelection =
+            ArchiveEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    ArchiveEntry.COLUMN_DATE + " >= ? AND " +
+                    ArchiveEntry.COLUMN_DATE + " <= ? ";
+
+    //weather_archive.month < ? AND days = 1
+    private static final String sArchiveUncompactedBeforeMonthSelection =
+            ArchiveEntry.COLUMN_MONTH + " < ? AND " +
+                    ArchiveEntry.COLUMN_DAYS + " = 1 ";
+
+    // The weather table joined to the location table, as the weather to archive is selected
+    private static final String sArchiveWeatherFromSql =
+            " FROM " + WeatherContract.WeatherEntry.TABLE_NAME + " INNER JOIN " +
+                    WeatherContract.LocationEntry.TABLE_NAME +
+                    " ON " + WeatherContract.WeatherEntry.TABLE_NAME +
+                    "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY +
+                    " = " + WeatherContract.LocationEntry.TABLE_NAME +
+                    "." + WeatherContract.LocationEntry._ID + " WHERE ";
+
+    // Copies weather rows, joined to their location setting, into the archive.  The month key
+    // expression is formatted in and the WHERE clause is appended by the caller.
+    private static final String sArchiveWeatherSql =
+            "INSERT INTO " + ArchiveEntry.TABLE_NAME + " (" +
+                    ArchiveEntry.COLUMN_LOCATION_SETTING + ", " +
+                    ArchiveEntry.COLUMN_DATE + ", " +
+                    ArchiveEntry.COLUMN_MONTH + ", " +
+                    ArchiveEntry.COLUMN_DAYS + ", " +
+                    ArchiveEntry.COLUMN_SHORT_DESC + ", " +
+                    ArchiveEntry.COLUMN_WEATHER_ID + ", " +
+                    ArchiveEntry.COLUMN_MIN_TEMP + ", " +
+                    ArchiveEntry.COLUMN_MAX_TEMP + ", " +
+                    ArchiveEntry.COLUMN_HUMIDITY + ", " +
+                    ArchiveEntry.COLUMN_PRESSURE + ", " +
+                    ArchiveEntry.COLUMN_WIND_SPEED + ", " +
+                    ArchiveEntry.COLUMN_DEGREES + ") SELECT " +
+                    WeatherContract.LocationEntry.TABLE_NAME + "." +
+                    WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + ", " +
+                    "%s, 1, " +
+                    WeatherContract.WeatherEntry.COLUMN_SHORT_DESC + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_HUMIDITY + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_PRESSURE + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_WIND_SPEED + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_DEGREES + sArchiveWeatherFromSql;
+
+    private Cursor getArchiveByLocationSettingAndRange(
+            Uri uri, String[] projection, String sortOrder) {
+        String locationSetting = ArchiveEntry.getLocationSettingFromUri(uri);
+        long startDate = ArchiveEntry.getStartDateFromUri(uri);
+        long endDate = ArchiveEntry.getEndDateFromUri(uri);
+
+        if (sortOrder == null) {
+            sortOrder = ArchiveEntry.COLUMN_DATE + " ASC";
+        }
+        return mOpenHelper.getReadableDatabase().query(ArchiveEntry.TABLE_NAME,
+                projection,
+                sArchiveLocationRangeSelection,
+                new String[]{locationSetting, Long.toString(startDate), Long.toString(endDate)},
+                null,
+                null,
+                sortOrder
+        );
+    }
+
+    //location.location_setting = ? AND period = ?
+    private static final String sAggregateLocationPeriodSelection =
+            WeatherContract.LocationEntry.TABLE_NAME +
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    AggregateEntry.COLUMN_PERIOD + " = ? ";
+
+    //location.location_setting = ? AND period = ? AND period_start = ?
+    private static final String sAggregateLocationPeriodStartSelection =
+            sAggregateLocationPeriodSelection + "AND " +
+                    AggregateEntry.COLUMN_PERIOD_START + " = ? ";
+
+    // The days of one location within [start, end): live weather rows, plus archived days that
+    // have no live row.  Compacted archive rows span several days and are left out.
+    private static final String sAggregateSourceSql =
+            "SELECT " + WeatherContract.WeatherEntry.COLUMN_DATE + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_WEATHER_ID +
+                    " FROM " + WeatherContract.WeatherEntry.TABLE_NAME +
+                    " WHERE " + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " < ?" +
+                    " UNION ALL SELECT " + ArchiveEntry.COLUMN_DATE + ", " +
+                    ArchiveEntry.COLUMN_MIN_TEMP + ", " +
+                    ArchiveEntry.COLUMN_MAX_TEMP + ", " +
+                    ArchiveEntry.COLUMN_WEATHER_ID +
+                    " FROM " + ArchiveEntry.TABLE_NAME +
+                    " WHERE " + ArchiveEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    ArchiveEntry.COLUMN_DAYS + " = 1 AND " +
+                    ArchiveEntry.COLUMN_DATE + " >= ? AND " +
+                    ArchiveEntry.COLUMN_DATE + " < ? AND " +
+                    ArchiveEntry.COLUMN_DATE + " NOT IN (SELECT " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE +
+                    " FROM " + WeatherContract.WeatherEntry.TABLE_NAME +
+                    " WHERE " + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " < ?)";
+
+    private Cursor getAggregateByLocationSettingAndPeriod(
+            Uri uri, String[] projection, String sortOrder) {
+        String locationSetting = AggregateEntry.getLocationSettingFromUri(uri);
+        String period = AggregateEntry.getPeriodFromUri(uri);
+        long periodStart = AggregateEntry.getPeriodStartFromUri(uri);
+
+        String selection;
+        String[] selectionArgs;
+        if (periodStart == 0) {
+            selection = sAggregateLocationPeriodSelection;
+            selectionArgs = new String[]{locationSetting, period};
+        } else {
+            selection = sAggregateLocationPeriodStartSelection;
+            selectionArgs = new String[]{locationSetting, period, Long.toString(periodStart)};
+        }
+
+        if (sortOrder == null) {
+            sortOrder = AggregateEntry.COLUMN_PERIOD_START + " ASC";
+        }
+        return sAggregateByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
                 projection,
                 selection,
                 selectionArgs,
@@ -93,6 +340,30 @@ public class WeatherProvider extends ContentProvider {
         );
     }
 
+    private Cursor searchLocations(SQLiteQueryBuilder builder, Uri uri, String[] projection) {
+        String query = LocationSearchEntry.getQueryFromUri(uri).trim();
+        String limit = LocationSearchEntry.getLimitFromUri(uri);
+        String match = LocationSearchEntry.toMatchExpression(query);
+        String nameKey = LocationSearchEntry.toNameKeyQuery(query);
+        if (null == limit) limit = DEFAULT_SEARCH_LIMIT;
+
+        if (null == match || null == nameKey) {
+            // Nothing to search for; answer with an empty result of the requested shape.  A
+            // limit of 0 stops each group before the index is consulted.
+            match = nameKey = "";
+            limit = "0";
+        }
+        return builder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                null,
+                new String[]{nameKey, limit, nameKey + "*", limit, match, limit},
+                null,
+                null,
+                sLocationSearchRanking,
+                limit
+        );
+    }
+
     private Cursor getWeatherByLocationSettingAndDate(
             Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
@@ -130,6 +401,18 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+
+        matcher.addURI(authority, WeatherContract.PATH_ARCHIVE, ARCHIVE);
+        matcher.addURI(authority, WeatherContract.PATH_ARCHIVE + "/*", ARCHIVE_WITH_LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_ARCHIVE_COMPACT, ARCHIVE_COMPACT);
+
+        matcher.addURI(authority, WeatherContract.PATH_AGGREGATE, AGGREGATE);
+        matcher.addURI(authority, WeatherContract.PATH_AGGREGATE + "/*/*",
+                AGGREGATE_WITH_LOCATION_AND_PERIOD);
+
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION_SEARCH + "/*", LOCATION_SEARCH);
+        matcher.addURI(authority, SearchManager.SUGGEST_URI_PATH_QUERY, SEARCH_SUGGEST);
+        matcher.addURI(authority, SearchManager.SUGGEST_URI_PATH_QUERY + "/*", SEARCH_SUGGEST);
         return matcher;
     }
 
@@ -164,6 +447,18 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case ARCHIVE:
+            case ARCHIVE_WITH_LOCATION:
+                return ArchiveEntry.CONTENT_TYPE;
+            case AGGREGATE:
+                return AggregateEntry.CONTENT_TYPE;
+            case AGGREGATE_WITH_LOCATION_AND_PERIOD:
+                return AggregateEntry.getPeriodStartFromUri(uri) == 0
+                        ? AggregateEntry.CONTENT_TYPE : AggregateEntry.CONTENT_ITEM_TYPE;
+            case LOCATION_SEARCH:
+                return LocationSearchEntry.CONTENT_TYPE;
+            case SEARCH_SUGGEST:
+                return SearchManager.SUGGEST_MIME_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -213,6 +508,53 @@ public class WeatherProvider extends ContentProvider {
                 );
                 break;
             }
+            // "archive/*"
+            case ARCHIVE_WITH_LOCATION: {
+                retCursor = getArchiveByLocationSettingAndRange(uri, projection, sortOrder);
+                break;
+            }
+            // "archive"
+            case ARCHIVE: {
+                retCursor = mOpenHelper.getReadableDatabase().query(
+                        ArchiveEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
+                break;
+            }
+            // "aggregate/*/*"
+            case AGGREGATE_WITH_LOCATION_AND_PERIOD: {
+                retCursor = getAggregateByLocationSettingAndPeriod(uri, projection, sortOrder);
+                break;
+            }
+            // "location_search/*"
+            case LOCATION_SEARCH: {
+                retCursor = searchLocations(sLocationSearchQueryBuilder, uri, projection);
+                break;
+            }
+            // "search_suggest_query/*"
+            case SEARCH_SUGGEST: {
+                retCursor = searchLocations(sSearchSuggestQueryBuilder, uri,
+                        null == projection ? SEARCH_SUGGEST_COLUMNS : projection);
+                break;
+            }
+            // "aggregate"
+            case AGGREGATE: {
+                retCursor = mOpenHelper.getReadableDatabase().query(
+                        AggregateEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
+                break;
+            }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -233,19 +575,56 @@ public class WeatherProvider extends ContentProvider {
         switch (match) {
             case WEATHER: {
                 normalizeDate(values);
-                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                long _id;
+                db.beginTransaction();
+                try {
+                    _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                    if (_id > 0) {
+                        LinkedHashSet<AggregatePeriod> periods = new LinkedHashSet<AggregatePeriod>();
+                        addAggregatePeriods(periods, values);
+                        refreshAggregates(db, periods);
+                        db.setTransactionSuccessful();
+                    }
+                } finally {
+                    db.endTransaction();
+                }
                 if ( _id > 0 )
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                getContext().getContentResolver().notifyChange(AggregateEntry.CONTENT_URI, null);
                 break;
             }
             case LOCATION: {
-                long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
+                long _id;
+                boolean rebuilt;
+                db.beginTransaction();
+                try {
+                    _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
+                    rebuilt = _id > 0 && rebuildArchivedAggregates(db, _id,
+                            values.getAsString(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING));
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
                 if ( _id > 0 )
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                if (rebuilt) {
+                    getContext().getContentResolver().notifyChange(
+                            AggregateEntry.CONTENT_URI, null);
+                }
+                break;
+            }
+            case ARCHIVE: {
+                normalizeDate(values);
+                putMonthKey(values);
+                long _id = db.insert(ArchiveEntry.TABLE_NAME, null, values);
+                if ( _id > 0 )
+                    returnUri = ContentUris.withAppendedId(ArchiveEntry.CONTENT_URI, _id);
+                else
+                    throw new android.database.SQLException("Failed to insert row into " + uri);
                 break;
             }
             default:
@@ -264,13 +643,28 @@ public class WeatherProvider extends ContentProvider {
         if ( null == selection ) selection = "1";
         switch (match) {
             case WEATHER:
-                rowsDeleted = db.delete(
-                        WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                if (WeatherContract.WeatherEntry.isArchivingUri(uri)) {
+                    rowsDeleted = archiveWeather(db, selection, selectionArgs);
+                } else {
+                    rowsDeleted = deleteWeather(db, selection, selectionArgs);
+                }
                 break;
             case LOCATION:
                 rowsDeleted = db.delete(
                         WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
                 break;
+            case ARCHIVE:
+                rowsDeleted = db.delete(ArchiveEntry.TABLE_NAME, selection, selectionArgs);
+                break;
+            case AGGREGATE:
+                rowsDeleted = db.delete(AggregateEntry.TABLE_NAME, selection, selectionArgs);
+                break;
+            case ARCHIVE_COMPACT:
+                rowsDeleted = compactArchive(db, ArchiveEntry.getBeforeDateFromUri(uri));
+                if (rowsDeleted != 0) {
+                    getContext().getContentResolver().notifyChange(ArchiveEntry.CONTENT_URI, null);
+                }
+                return rowsDeleted;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -281,6 +675,392 @@ public class WeatherProvider extends ContentProvider {
         return rowsDeleted;
     }
 
+    /*
+        Deletes the selected weather rows and rebuilds the aggregate periods they fell in, in
+        one transaction.  Archived rows don't need this, since the aggregates count the archive.
+     */
+    private int deleteWeather(SQLiteDatabase db, String selection, String[] selectionArgs) {
+        int rowsDeleted;
+        LinkedHashSet<AggregatePeriod> periods = new LinkedHashSet<AggregatePeriod>();
+        db.beginTransaction();
+        try {
+            addAggregatePeriods(db, selection, selectionArgs, null, periods);
+            rowsDeleted = db.delete(
+                    WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+            refreshAggregates(db, periods);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (!periods.isEmpty()) {
+            getContext().getContentResolver().notifyChange(AggregateEntry.CONTENT_URI, null);
+        }
+        return rowsDeleted;
+    }
+
+    /*
+        Moves the selected weather rows into the archive and deletes them, in one transaction.
+     */
+    private int archiveWeather(SQLiteDatabase db, String selection, String[] selectionArgs) {
+        int rowsDeleted;
+        db.beginTransaction();
+        try {
+            String monthKey = buildMonthKeyExpression(db, selection, selectionArgs);
+            db.execSQL(String.format(sArchiveWeatherSql, monthKey) + selection,
+                    null == selectionArgs ? new Object[0] : selectionArgs);
+            rowsDeleted = db.delete(
+                    WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (rowsDeleted != 0) {
+            getContext().getContentResolver().notifyChange(ArchiveEntry.CONTENT_URI, null);
+        }
+        return rowsDeleted;
+    }
+
+    /*
+        Returns an SQL expression for the archive month key of a selected weather row's date.
+        The months are worked out here, since SQLite's date functions know UTC and the system
+        zone but not the zone normalizeDate used; the few months a selection of forecast days
+        can span become one CASE.
+     */
+    private String buildMonthKeyExpression(SQLiteDatabase db, String selection,
+                                           String[] selectionArgs) {
+        Cursor cursor = db.rawQuery("SELECT MIN(" + WeatherContract.WeatherEntry.COLUMN_DATE +
+                "), MAX(" + WeatherContract.WeatherEntry.COLUMN_DATE + ")" +
+                sArchiveWeatherFromSql + selection, selectionArgs);
+        try {
+            // Nothing is selected, so nothing needs a key
+            if (!cursor.moveToFirst() || cursor.isNull(0)) return "0";
+            long lastDate = cursor.getLong(1);
+            StringBuilder expression = new StringBuilder("CASE");
+            long monthStart = AggregateEntry.getPeriodStart(
+                    AggregateEntry.PERIOD_MONTH, cursor.getLong(0));
+            while (monthStart <= lastDate) {
+                long monthEnd = AggregateEntry.getPeriodEnd(AggregateEntry.PERIOD_MONTH, monthStart);
+                expression.append(" WHEN ").append(WeatherContract.WeatherEntry.COLUMN_DATE)
+                        .append(" < ").append(monthEnd)
+                        .append(" THEN ").append(ArchiveEntry.getMonthKey(monthStart));
+                monthStart = monthEnd;
+            }
+            return expression.append(" END").toString();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /*
+        Downsamples the daily rows of every archive month before the one containing beforeDate
+        into one row per location per week, with weeks split where a month ends so each row
+        stays in its month's partition.  Returns the number of rows by
+        which the archive shrank.
+     */
+    private int compactArchive(SQLiteDatabase db, long beforeDate) {
+        String[] selectionArgs = new String[]{
+                Integer.toString(ArchiveEntry.getMonthKey(beforeDate))};
+        int removed = 0;
+        db.beginTransaction();
+        try {
+            Cursor cursor = db.query(ArchiveEntry.TABLE_NAME, null,
+                    sArchiveUncompactedBeforeMonthSelection, selectionArgs, null, null,
+                    ArchiveEntry.COLUMN_LOCATION_SETTING + " ASC, " +
+                            ArchiveEntry.COLUMN_DATE + " ASC");
+            ArrayList<ContentValues> compacted = new ArrayList<ContentValues>();
+            try {
+                ArchiveBucket bucket = null;
+                while (cursor.moveToNext()) {
+                    if (null == bucket || !bucket.contains(cursor)) {
+                        if (null != bucket) compacted.add(bucket.toContentValues());
+                        bucket = new ArchiveBucket(cursor);
+                    }
+                    bucket.add(cursor);
+                }
+                if (null != bucket) compacted.add(bucket.toContentValues());
+            } finally {
+                cursor.close();
+            }
+
+            int deleted = db.delete(ArchiveEntry.TABLE_NAME,
+                    sArchiveUncompactedBeforeMonthSelection, selectionArgs);
+            for (ContentValues values : compacted) {
+                db.insert(ArchiveEntry.TABLE_NAME, null, values);
+            }
+            removed = deleted - compacted.size();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return removed;
+    }
+
+    /*
+        Accumulates the archived days of one location that fall in the same week and month.
+     */
+    private static class ArchiveBucket {
+        final String mLocationSetting;
+        final int mMonth;
+        final long mWeekStart;
+        long mFirstDate = Long.MAX_VALUE;
+        int mDays;
+        double mMin = Double.MAX_VALUE;
+        double mMax = -Double.MAX_VALUE;
+        double mHumidity, mPressure, mWind, mDegrees;
+        final SparseIntArray mWeatherIdCounts = new SparseIntArray();
+        int mDominantWeatherId;
+        String mDominantDesc;
+
+        ArchiveBucket(Cursor c) {
+            mLocationSetting = c.getString(c.getColumnIndex(ArchiveEntry.COLUMN_LOCATION_SETTING));
+            mMonth = c.getInt(c.getColumnIndex(ArchiveEntry.COLUMN_MONTH));
+            mWeekStart = getWeekStart(c);
+        }
+
+        boolean contains(Cursor c) {
+            return mLocationSetting.equals(
+                    c.getString(c.getColumnIndex(ArchiveEntry.COLUMN_LOCATION_SETTING))) &&
+                    mMonth == c.getInt(c.getColumnIndex(ArchiveEntry.COLUMN_MONTH)) &&
+                    mWeekStart == getWeekStart(c);
+        }
+
+        private static long getWeekStart(Cursor c) {
+            return AggregateEntry.getPeriodStart(AggregateEntry.PERIOD_WEEK,
+                    c.getLong(c.getColumnIndex(ArchiveEntry.COLUMN_DATE)));
+        }
+
+        void add(Cursor c) {
+            mFirstDate = Math.min(mFirstDate, c.getLong(c.getColumnIndex(ArchiveEntry.COLUMN_DATE)));
+            mDays++;
+            mMin = Math.min(mMin, c.getDouble(c.getColumnIndex(ArchiveEntry.COLUMN_MIN_TEMP)));
+            mMax = Math.max(mMax, c.getDouble(c.getColumnIndex(ArchiveEntry.COLUMN_MAX_TEMP)));
+            mHumidity += c.getDouble(c.getColumnIndex(ArchiveEntry.COLUMN_HUMIDITY));
+            mPressure += c.getDouble(c.getColumnIndex(ArchiveEntry.COLUMN_PRESSURE));
+            mWind += c.getDouble(c.getColumnIndex(ArchiveEntry.COLUMN_WIND_SPEED));
+            mDegrees += c.getDouble(c.getColumnIndex(ArchiveEntry.COLUMN_DEGREES));
+
+            int weatherId = c.getInt(c.getColumnIndex(ArchiveEntry.COLUMN_WEATHER_ID));
+            int count = mWeatherIdCounts.get(weatherId) + 1;
+            mWeatherIdCounts.put(weatherId, count);
+            if (null == mDominantDesc || count > mWeatherIdCounts.get(mDominantWeatherId)) {
+                mDominantWeatherId = weatherId;
+                mDominantDesc = c.getString(c.getColumnIndex(ArchiveEntry.COLUMN_SHORT_DESC));
+            }
+        }
+
+        ContentValues toContentValues() {
+            ContentValues values = new ContentValues();
+            values.put(ArchiveEntry.COLUMN_LOCATION_SETTING, mLocationSetting);
+            values.put(ArchiveEntry.COLUMN_DATE, mFirstDate);
+            values.put(ArchiveEntry.COLUMN_MONTH, mMonth);
+            values.put(ArchiveEntry.COLUMN_DAYS, mDays);
+            values.put(ArchiveEntry.COLUMN_WEATHER_ID, mDominantWeatherId);
+            values.put(ArchiveEntry.COLUMN_SHORT_DESC, mDominantDesc);
+            values.put(ArchiveEntry.COLUMN_MIN_TEMP, mMin);
+            values.put(ArchiveEntry.COLUMN_MAX_TEMP, mMax);
+            values.put(ArchiveEntry.COLUMN_HUMIDITY, mHumidity / mDays);
+            values.put(ArchiveEntry.COLUMN_PRESSURE, mPressure / mDays);
+            values.put(ArchiveEntry.COLUMN_WIND_SPEED, mWind / mDays);
+            values.put(ArchiveEntry.COLUMN_DEGREES, mDegrees / mDays);
+            return values;
+        }
+    }
+
+    /*
+        Identifies one aggregate row: a location and the start of one of its periods.
+     */
+    private static final class AggregatePeriod {
+        final long mLocationId;
+        final String mPeriod;
+        final long mStart;
+
+        AggregatePeriod(long locationId, String period, long start) {
+            mLocationId = locationId;
+            mPeriod = period;
+            mStart = start;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof AggregatePeriod)) return false;
+            AggregatePeriod other = (AggregatePeriod) o;
+            return mLocationId == other.mLocationId && mStart == other.mStart
+                    && mPeriod.equals(other.mPeriod);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * (int) (mLocationId ^ (mLocationId >>> 32))
+                    + (int) (mStart ^ (mStart >>> 32))) + mPeriod.hashCode();
+        }
+    }
+
+    private void addAggregatePeriods(LinkedHashSet<AggregatePeriod> periods, ContentValues value) {
+        Long locationId = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+        Long date = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+        if (null == locationId || null == date) return;
+        for (String period : AGGREGATE_PERIODS) {
+            periods.add(new AggregatePeriod(locationId, period,
+                    AggregateEntry.getPeriodStart(period, date)));
+        }
+    }
+
+    /*
+        Rebuilds the aggregates of a newly inserted location from its archived days.  The
+        aggregates are keyed by location _id, so they are lost with the location table on a
+        database upgrade while the archive is kept; this restores them once the location is
+        synced again.  Returns whether there was anything to rebuild.
+     */
+    private boolean rebuildArchivedAggregates(SQLiteDatabase db, long locationId,
+                                              String locationSetting) {
+        if (null == locationSetting) return false;
+        LinkedHashSet<AggregatePeriod> periods = new LinkedHashSet<AggregatePeriod>();
+        Cursor cursor = db.query(ArchiveEntry.TABLE_NAME,
+                new String[]{ArchiveEntry.COLUMN_DATE},
+                ArchiveEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                        ArchiveEntry.COLUMN_DAYS + " = 1",
+                new String[]{locationSetting}, null, null, null);
+        try {
+            ContentValues value = new ContentValues();
+            value.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+            while (cursor.moveToNext()) {
+                value.put(WeatherContract.WeatherEntry.COLUMN_DATE, cursor.getLong(0));
+                addAggregatePeriods(periods, value);
+            }
+        } finally {
+            cursor.close();
+        }
+        refreshAggregates(db, periods);
+        return !periods.isEmpty();
+    }
+
+    /*
+        Adds the periods of the selected weather rows.  Given the values they are about to be
+        updated with, also adds the periods they will fall in afterwards.
+     */
+    private void addAggregatePeriods(SQLiteDatabase db, String selection, String[] selectionArgs,
+                                     ContentValues changes,
+                                     LinkedHashSet<AggregatePeriod> periods) {
+        Long changedLocationId = null == changes ? null
+                : changes.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+        Long changedDate = null == changes ? null
+                : changes.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+        Cursor cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                new String[]{WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+                        WeatherContract.WeatherEntry.COLUMN_DATE},
+                selection, selectionArgs, null, null, null);
+        try {
+            ContentValues value = new ContentValues();
+            while (cursor.moveToNext()) {
+                value.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, cursor.getLong(0));
+                value.put(WeatherContract.WeatherEntry.COLUMN_DATE, cursor.getLong(1));
+                addAggregatePeriods(periods, value);
+                if (null != changedLocationId || null != changedDate) {
+                    if (null != changedLocationId) {
+                        value.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, changedLocationId);
+                    }
+                    if (null != changedDate) {
+                        value.put(WeatherContract.WeatherEntry.COLUMN_DATE, changedDate);
+                    }
+                    addAggregatePeriods(periods, value);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /*
+        Recomputes each of the given aggregate rows from the days it currently covers.  Because
+        the row is rebuilt rather than adjusted, a revised forecast for a day that was already
+        counted simply replaces the old values.  Must be called inside the caller's transaction.
+     */
+    private void refreshAggregates(SQLiteDatabase db, LinkedHashSet<AggregatePeriod> periods) {
+        for (AggregatePeriod period : periods) {
+            String locationSetting = getLocationSetting(db, period.mLocationId);
+            String locationId = Long.toString(period.mLocationId);
+            String start = Long.toString(period.mStart);
+            String end = Long.toString(AggregateEntry.getPeriodEnd(period.mPeriod, period.mStart));
+
+            int days = 0;
+            int precipitationDays = 0;
+            double min = Double.MAX_VALUE;
+            double max = -Double.MAX_VALUE;
+            double minSum = 0;
+            double maxSum = 0;
+            SparseIntArray weatherIdCounts = new SparseIntArray();
+            int dominantWeatherId = 0;
+
+            Cursor cursor = db.rawQuery(sAggregateSourceSql, new String[]{
+                    locationId, start, end,
+                    null == locationSetting ? "" : locationSetting, start, end,
+                    locationId, start, end});
+            try {
+                while (cursor.moveToNext()) {
+                    double dayMin = cursor.getDouble(1);
+                    double dayMax = cursor.getDouble(2);
+                    int weatherId = cursor.getInt(3);
+                    days++;
+                    min = Math.min(min, dayMin);
+                    max = Math.max(max, dayMax);
+                    minSum += dayMin;
+                    maxSum += dayMax;
+                    // 2xx thunderstorm, 3xx drizzle, 5xx rain and 6xx snow
+                    if (weatherId >= 200 && weatherId < 700) precipitationDays++;
+                    int count = weatherIdCounts.get(weatherId) + 1;
+                    weatherIdCounts.put(weatherId, count);
+                    if (days == 1 || count > weatherIdCounts.get(dominantWeatherId)) {
+                        dominantWeatherId = weatherId;
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+
+            if (days == 0) {
+                db.delete(AggregateEntry.TABLE_NAME,
+                        AggregateEntry.COLUMN_LOC_KEY + " = ? AND " +
+                                AggregateEntry.COLUMN_PERIOD + " = ? AND " +
+                                AggregateEntry.COLUMN_PERIOD_START + " = ?",
+                        new String[]{locationId, period.mPeriod, start});
+                continue;
+            }
+
+            ContentValues values = new ContentValues();
+            values.put(AggregateEntry.COLUMN_LOC_KEY, period.mLocationId);
+            values.put(AggregateEntry.COLUMN_PERIOD, period.mPeriod);
+            values.put(AggregateEntry.COLUMN_PERIOD_START, period.mStart);
+            values.put(AggregateEntry.COLUMN_DAYS, days);
+            values.put(AggregateEntry.COLUMN_MIN_TEMP, min);
+            values.put(AggregateEntry.COLUMN_MAX_TEMP, max);
+            values.put(AggregateEntry.COLUMN_AVG_MIN_TEMP, minSum / days);
+            values.put(AggregateEntry.COLUMN_AVG_MAX_TEMP, maxSum / days);
+            values.put(AggregateEntry.COLUMN_PRECIPITATION_DAYS, precipitationDays);
+            values.put(AggregateEntry.COLUMN_WEATHER_ID, dominantWeatherId);
+            db.insert(AggregateEntry.TABLE_NAME, null, values);
+        }
+    }
+
+    private String getLocationSetting(SQLiteDatabase db, long locationId) {
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                WeatherContract.LocationEntry._ID + " = ?",
+                new String[]{Long.toString(locationId)}, null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void putMonthKey(ContentValues values) {
+        if (values.containsKey(ArchiveEntry.COLUMN_DATE)
+                && !values.containsKey(ArchiveEntry.COLUMN_MONTH)) {
+            values.put(ArchiveEntry.COLUMN_MONTH,
+                    ArchiveEntry.getMonthKey(values.getAsLong(ArchiveEntry.COLUMN_DATE)));
+        }
+    }
+
     private void normalizeDate(ContentValues values) {
         // normalize the date value
         if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)) {
@@ -297,11 +1077,26 @@ public class WeatherProvider extends ContentProvider {
         int rowsUpdated;
 
         switch (match) {
-            case WEATHER:
+            case WEATHER: {
                 normalizeDate(values);
-                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
+                // A revision through update must reach the rollups just as one through insert
+                LinkedHashSet<AggregatePeriod> periods = new LinkedHashSet<AggregatePeriod>();
+                db.beginTransaction();
+                try {
+                    addAggregatePeriods(db, selection, selectionArgs, values, periods);
+                    rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values,
+                            selection, selectionArgs);
+                    refreshAggregates(db, periods);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                if (rowsUpdated != 0) {
+                    getContext().getContentResolver().notifyChange(
+                            AggregateEntry.CONTENT_URI, null);
+                }
                 break;
+            }
             case LOCATION:
                 rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
                         selectionArgs);
@@ -324,18 +1119,24 @@ public class WeatherProvider extends ContentProvider {
                 db.beginTransaction();
                 int returnCount = 0;
                 try {
+                    LinkedHashSet<AggregatePeriod> periods = new LinkedHashSet<AggregatePeriod>();
                     for (ContentValues value : values) {
                         normalizeDate(value);
                         long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
                         if (_id != -1) {
                             returnCount++;
+                            addAggregatePeriods(periods, value);
                         }
                     }
+                    // Rebuild only the periods this batch touched, before committing, so the
+                    // rollups never disagree with the rows they summarize.
+                    refreshAggregates(db, periods);
                     db.setTransactionSuccessful();
                 } finally {
                     db.endTransaction();
                 }
                 getContext().getContentResolver().notifyChange(uri, null);
+                getContext().getContentResolver().notifyChange(AggregateEntry.CONTENT_URI, null);
                 return returnCount;
             default:
                 return super.bulkInsert(uri, values);
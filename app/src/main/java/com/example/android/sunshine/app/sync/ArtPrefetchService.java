@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.app.IntentService;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.request.target.Target;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+
+import java.util.LinkedHashSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Warms Glide's caches with the artwork of every weather condition in the selected art pack,
+ * so that the list, detail view, widgets and notification don't each fetch it on first use.
+ * A pack only has about a dozen images.
+ * <p>
+ * The original images go to the disk cache, which is only read by requests that use
+ * {@link DiskCacheStrategy#ALL}, so every remote art load in the app does.  The list-sized
+ * images are also decoded into Glide's memory cache, which evicts by size in bytes and is
+ * shared by everything running in the app's process, widgets included.
+ */
+public class ArtPrefetchService extends IntentService {
+    private static final String LOG_TAG = ArtPrefetchService.class.getSimpleName();
+
+    // Per image, so that one slow image doesn't hold up the rest of the pack for long
+    private static final int FETCH_TIMEOUT_SECONDS = 15;
+
+    public ArtPrefetchService() {
+        super("ArtPrefetchService");
+    }
+
+    /**
+     * Prefetches the selected art pack off the main thread, e.g. after the pack is changed or
+     * a sync.
+     */
+    public static void start(Context context) {
+        context.startService(new Intent(context, ArtPrefetchService.class));
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        prefetch(this);
+    }
+
+    /**
+     * Fetches every image of the selected art pack that isn't cached yet.  Blocks, so must not
+     * be called on the main thread.  Does nothing when the local graphics are in use.
+     */
+    public static void prefetch(Context context) {
+        if (Utility.usingLocalGraphics(context)) return;
+        context = context.getApplicationContext();
+        int listIconSize = context.getResources().getDimensionPixelSize(R.dimen.list_icon);
+
+        for (String artUrl : getArtUrls(context)) {
+            try {
+                Glide.with(context)
+                        .load(artUrl)
+                        .downloadOnly(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL)
+                        .get(FETCH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                // The same request ForecastAdapter makes for a list_icon sized ImageView
+                Glide.with(context)
+                        .load(artUrl)
+                        .diskCacheStrategy(DiskCacheStrategy.ALL)
+                        .fitCenter()
+                        .into(listIconSize, listIconSize)
+                        .get(FETCH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException | TimeoutException e) {
+                // The image will be fetched on demand instead
+                Log.w(LOG_TAG, "Unable to prefetch " + artUrl, e);
+            }
+        }
+    }
+
+    /**
+     * @return the distinct art URLs of the selected pack, in condition code order
+     */
+    static LinkedHashSet<String> getArtUrls(Context context) {
+        LinkedHashSet<String> artUrls = new LinkedHashSet<String>();
+        for (int weatherId = 200; weatherId < 1000; weatherId++) {
+            String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
+            if (artUrl != null) artUrls.add(artUrl);
+        }
+        return artUrls;
+    }
+}
@@ -2,7 +2,6 @@ package com.example.android.sunshine.app.sync;
 
 import android.accounts.Account;
 import android.accounts.AccountManager;
-import android.annotation.SuppressLint;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
@@ -18,33 +17,27 @@ import android.content.SyncResult;
 import android.content.res.Resources;
 import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
-import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
 import android.text.format.Time;
 import android.util.Log;
 
-import com.bumptech.glide.Glide;
+import com.example.android.sunshine.app.ArtBitmapCache;
 import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.ForecastSnapshotFile;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.Gazetteer;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.ResultCallback;
-import com.google.android.gms.wearable.DataApi;
-import com.google.android.gms.wearable.PutDataMapRequest;
-import com.google.android.gms.wearable.PutDataRequest;
-import com.google.android.gms.wearable.Wearable;
+import com.example.android.sunshine.app.wear.WearablePublisher;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -59,10 +52,8 @@ import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.Vector;
-import java.util.concurrent.ExecutionException;
 
-public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements GoogleApiClient.ConnectionCallbacks,GoogleApiClient.OnConnectionFailedListener
-{
+public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
     public static final String ACTION_DATA_UPDATED =
             "com.example.android.sunshine.app.ACTION_DATA_UPDATED";
@@ -71,18 +62,10 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     public static final int SYNC_INTERVAL = 60 * 180;
     public static final int SYNC_FLEXTIME = SYNC_INTERVAL/3;
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    // Archived history keeps one row per day for roughly this long before being downsampled
+    private static final long ARCHIVE_DAILY_DETAIL_MILLIS = 90 * DAY_IN_MILLIS;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
 
-    double highTemp,lowTemp;
-    int weatherIdForWear;
-    boolean valuesSetFlag=false;
-
-    private static final String WEATHER_PATH = "/weather";
-    private static final String KEY_TIME="time";
-    private static final String KEY_HIGH = "high";
-    private static final String KEY_LOW = "low";
-    private static final String KEY_WEATHER_ID = "weatherId";
-
     private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
             WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
@@ -106,66 +89,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     public static final int LOCATION_STATUS_UNKNOWN = 3;
     public static final int LOCATION_STATUS_INVALID = 4;
 
-    private GoogleApiClient client;
-
     public SunshineSyncAdapter(Context context, boolean autoInitialize) {
         super(context, autoInitialize);
-
-        if(client==null)
-        {
-            client=new GoogleApiClient.Builder(context)
-                    .addApi(Wearable.API)
-                    .addConnectionCallbacks(this)
-                    .addOnConnectionFailedListener(this)
-                    .build();
-            client.connect();
-        }
-    }
-
-    @Override
-    public void onConnected(Bundle bundle)
-    {
-        Log.d(LOG_TAG,"Google Api Connected");
-        Log.d(LOG_TAG,"FlagValue:"+valuesSetFlag);
-        if(valuesSetFlag)
-            sendDataToWearable(highTemp,lowTemp,weatherIdForWear);
-    }
-
-    @Override
-    public void onConnectionSuspended(int i)
-    {
-        Log.d(LOG_TAG,"Google client connection suspended");
-    }
-
-    @Override
-    public void onConnectionFailed(ConnectionResult connectionResult)
-    {
-        Log.d(LOG_TAG,"Google client connection failed");
-    }
-
-    private void sendDataToWearable(double high,double low, int weatherId)
-    {
-        Log.d(LOG_TAG,"Sending Weather Data");
-
-        PutDataMapRequest putDataMapRequest=PutDataMapRequest.create(WEATHER_PATH);
-        putDataMapRequest.getDataMap().putLong(KEY_TIME,System.currentTimeMillis());
-        putDataMapRequest.getDataMap().putString(KEY_HIGH,Utility.formatTemperature(getContext(),high));
-        putDataMapRequest.getDataMap().putString(KEY_LOW,Utility.formatTemperature(getContext(),low));
-        putDataMapRequest.getDataMap().putInt(KEY_WEATHER_ID,weatherId);
-
-        putDataMapRequest.setUrgent();
-        PutDataRequest request=putDataMapRequest.asPutDataRequest();
-        Wearable.DataApi.putDataItem(client,request).setResultCallback(new ResultCallback<DataApi.DataItemResult>()
-        {
-            @Override
-            public void onResult(@NonNull DataApi.DataItemResult dataItemResult) {
-                if (!dataItemResult.getStatus().isSuccess())
-                    Log.d(LOG_TAG,"Failed to send weather data");
-                else
-                    Log.d(LOG_TAG,"Weather data sent successfully");
-            }
-        });
-
     }
 
     @Override
@@ -355,6 +280,17 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
             double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
             double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
 
+            // OWM leaves the name empty for coordinates it can't place, which happens with
+            // Place Picker locations.  Name them after the nearest city we know of instead.
+            if (cityName.length() == 0 && Utility.isLocationLatLonAvailable(getContext())) {
+                Gazetteer gazetteer = Gazetteer.getInstance(getContext());
+                int nearest = null == gazetteer ? -1 :
+                        gazetteer.findNearest(cityLatitude, cityLongitude);
+                if (nearest != -1) {
+                    cityName = gazetteer.getName(nearest);
+                }
+            }
+
             long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
 
             // Insert the new weather information into the database
@@ -427,14 +363,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                 weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
                 weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
                 weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
-
-                if(i==0)
-                {
-                    valuesSetFlag=true;
-                    highTemp=high;
-                    lowTemp=low;
-                    weatherIdForWear=weatherId;
-                }
                 cVVector.add(weatherValues);
             }
 
@@ -443,16 +371,29 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
             if ( cVVector.size() > 0 ) {
                 ContentValues[] cvArray = new ContentValues[cVVector.size()];
                 cVVector.toArray(cvArray);
+                // The snapshot file must not outlive the data it was made from
+                ForecastSnapshotFile.delete(getContext());
                 getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
 
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
+                // move old data into the archive so the forecast table doesn't build up an
+                // endless history, then downsample archived months we no longer need daily
+                getContext().getContentResolver().delete(
+                        WeatherContract.WeatherEntry.buildArchivingDeleteUri(),
                         WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
                         new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
+                getContext().getContentResolver().delete(
+                        WeatherContract.ArchiveEntry.buildCompactUri(
+                                System.currentTimeMillis() - ARCHIVE_DAILY_DETAIL_MILLIS),
+                        null, null);
 
+                ForecastSnapshotFile.update(getContext());
+                WearablePublisher.getInstance(getContext()).publishForecast();
                 updateWidgets();
                 updateMuzei();
                 notifyWeather();
+                // In its own service, so slow or missing art never holds the updates above up;
+                // anything that needs an image first fetches it on demand
+                ArtPrefetchService.start(getContext());
             }
             Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
             setLocationStatus(getContext(), LOCATION_STATUS_OK);
@@ -515,30 +456,9 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                     int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
                     String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
 
-                    // On Honeycomb and higher devices, we can retrieve the size of the large icon
-                    // Prior to that, we use a fixed size
-                    @SuppressLint("InlinedApi")
-                    int largeIconWidth = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
-                            ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
-                            : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
-                    @SuppressLint("InlinedApi")
-                    int largeIconHeight = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
-                            ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
-                            : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
-
-                    // Retrieve the large icon
-                    Bitmap largeIcon;
-                    try {
-                        largeIcon = Glide.with(context)
-                                .load(artUrl)
-                                .asBitmap()
-                                .error(artResourceId)
-                                .fitCenter()
-                                .into(largeIconWidth, largeIconHeight).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
-                        largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
-                    }
+                    // Retrieve the large icon, decoded at its exact size
+                    Bitmap largeIcon = ArtBitmapCache.getLargeIcon(context,
+                            Utility.usingLocalGraphics(context) ? null : artUrl, artResourceId);
                     String title = context.getString(R.string.app_name);
 
                     // Define the text of the forecast.
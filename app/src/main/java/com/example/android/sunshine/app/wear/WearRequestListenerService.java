@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wear;
+
+import com.example.android.sunshine.app.WearForecast;
+import com.google.android.gms.wearable.MessageEvent;
+import com.google.android.gms.wearable.WearableListenerService;
+
+/**
+ * Hands the watch face's requests for the forecast to the {@link WearablePublisher}, which
+ * answers them from the last sync's snapshot without going to the network.
+ */
+public class WearRequestListenerService extends WearableListenerService {
+
+    @Override
+    public void onMessageReceived(MessageEvent messageEvent) {
+        // Called on a background thread, so the snapshot file can be read here
+        if (WearForecast.REFRESH_PATH.equals(messageEvent.getPath())) {
+            WearablePublisher.getInstance(this).answerRefresh(messageEvent.getSourceNodeId(),
+                    messageEvent.getData());
+        }
+    }
+}
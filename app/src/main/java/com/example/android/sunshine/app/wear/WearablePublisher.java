@@ -0,0 +1,416 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wear;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.example.android.sunshine.app.ForecastRepository;
+import com.example.android.sunshine.app.ForecastSnapshotFile;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.WearForecast;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Sends the forecast to the watch.  Nothing is connected until there is something to send:
+ * publishing queues the payload, replacing any that hasn't gone out yet, and a worker thread
+ * connects with a timeout, sends the latest payload and disconnects once it has been idle for
+ * {@link #IDLE_DISCONNECT_MILLIS}.
+ * <p>
+ * A payload identical to the last one the watch received isn't sent again.  Connection times
+ * and failures are counted, and logged as they happen.
+ * <p>
+ * Refresh requests from the watch are answered from the snapshot file rather than by syncing,
+ * at most once every {@link #REFRESH_MIN_INTERVAL_MILLIS}, and only if the watch doesn't hold
+ * the forecast already.
+ */
+public final class WearablePublisher {
+    private static final String LOG_TAG = WearablePublisher.class.getSimpleName();
+
+    static final long CONNECT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(15);
+    static final long SEND_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(15);
+    static final long IDLE_DISCONNECT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    // However many watches or faces ask, this is as often as the phone answers
+    static final long REFRESH_MIN_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * The connection to the watch.  Only ever used on the publisher's worker thread, so
+     * implementations may block.
+     */
+    interface Transport {
+        /**
+         * @return whether the connection was made within the timeout
+         */
+        boolean connect(long timeoutMillis);
+
+        boolean isConnected();
+
+        /**
+         * @return whether the data item was stored within the timeout
+         */
+        boolean putDataItem(String path, byte[] payload, boolean urgent, long timeoutMillis);
+
+        /**
+         * @return whether the message was sent within the timeout
+         */
+        boolean sendMessage(String nodeId, String path, byte[] payload, long timeoutMillis);
+
+        void disconnect();
+    }
+
+    /**
+     * A payload waiting to be sent, with what's remembered once it has been.
+     */
+    private static final class Item {
+        final byte[] payload;
+        final long hash;
+        final int weatherId;
+        final boolean urgent;
+
+        Item(byte[] payload, long hash, int weatherId, boolean urgent) {
+            this.payload = payload;
+            this.hash = hash;
+            this.weatherId = weatherId;
+            this.urgent = urgent;
+        }
+    }
+
+    private static WearablePublisher sInstance;
+
+    private final Context mContext;
+    private final Transport mTransport;
+    private final ScheduledExecutorService mExecutor;
+    // The latest payload not sent yet
+    private final AtomicReference<Item> mPending = new AtomicReference<Item>();
+    // Only touched on the worker thread
+    private ScheduledFuture<?> mDisconnect;
+
+    private final AtomicInteger mConnectCount = new AtomicInteger();
+    private final AtomicInteger mConnectFailureCount = new AtomicInteger();
+    private final AtomicLong mConnectMillis = new AtomicLong();
+    private final AtomicInteger mSentCount = new AtomicInteger();
+    private final AtomicInteger mSendFailureCount = new AtomicInteger();
+    private final AtomicInteger mSkippedCount = new AtomicInteger();
+    // elapsedRealtime() of the last refresh answered, or 0
+    private final AtomicLong mLastRefreshMillis = new AtomicLong();
+    private final AtomicInteger mRefreshCount = new AtomicInteger();
+    private final AtomicInteger mRefreshSkippedCount = new AtomicInteger();
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private final Runnable mDisconnectIfIdle = new Runnable() {
+        @Override
+        public void run() {
+            mDisconnect = null;
+            if (mPending.get() == null && mTransport.isConnected()) {
+                Log.d(LOG_TAG, "Idle, disconnecting");
+                mTransport.disconnect();
+            }
+        }
+    };
+
+    WearablePublisher(Context context, Transport transport, ScheduledExecutorService executor) {
+        mContext = context;
+        mTransport = transport;
+        mExecutor = executor;
+    }
+
+    public static synchronized WearablePublisher getInstance(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            sInstance = new WearablePublisher(appContext, new GmsTransport(appContext),
+                    Executors.newSingleThreadScheduledExecutor());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Queues the forecast written by the last sync for the watch, unless the watch already has
+     * it.  Reads the snapshot file, so not on the main thread.
+     */
+    public void publishForecast() {
+        WearForecast forecast = readForecast();
+        if (forecast != null) publish(forecast);
+    }
+
+    /**
+     * Sends a watch that asked for the forecast the one written by the last sync, unless the
+     * phone answered a request too recently or the watch holds that forecast already.  Reads
+     * the snapshot file, so not on the main thread.
+     *
+     * @param request the message's data, naming the forecast the watch holds
+     */
+    public void answerRefresh(String nodeId, byte[] request) {
+        answerRefresh(nodeId, request, null);
+    }
+
+    /**
+     * @param forecast the forecast to answer with, or null for the snapshot file's
+     */
+    void answerRefresh(final String nodeId, byte[] request, WearForecast forecast) {
+        long now = SystemClock.elapsedRealtime();
+        long last = mLastRefreshMillis.get();
+        if ((last != 0 && now - last < REFRESH_MIN_INTERVAL_MILLIS)
+                || !mLastRefreshMillis.compareAndSet(last, now)) {
+            mRefreshSkippedCount.incrementAndGet();
+            Log.d(LOG_TAG, "Refresh requested too soon, ignoring");
+            return;
+        }
+
+        if (forecast == null) forecast = readForecast();
+        if (forecast == null) return;
+        final byte[] payload = forecast.toBytes();
+        if (WearForecast.isHeld(request, payload)) {
+            mRefreshSkippedCount.incrementAndGet();
+            Log.d(LOG_TAG, "Refresh requested, but the watch is up to date");
+            return;
+        }
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!ensureConnected()) return;
+                if (mTransport.sendMessage(nodeId, WearForecast.PATH, payload,
+                        SEND_TIMEOUT_MILLIS)) {
+                    mRefreshCount.incrementAndGet();
+                    Log.d(LOG_TAG, "Refresh answered, " + payload.length + " bytes");
+                } else {
+                    mSendFailureCount.incrementAndGet();
+                    Log.w(LOG_TAG, "Failed to answer a refresh");
+                }
+                scheduleDisconnect();
+            }
+        });
+    }
+
+    /**
+     * @return the forecast in the snapshot file from today on, or null if there is none
+     */
+    private WearForecast readForecast() {
+        ForecastSnapshotFile.Contents contents = ForecastSnapshotFile.read(mContext);
+        int today = contents == null ? -1 : contents.getTodayIndex();
+        if (today < 0) {
+            Log.d(LOG_TAG, "No weather data to send");
+            return null;
+        }
+
+        List<ForecastRepository.Day> days = contents.snapshot.days;
+        WearForecast forecast = new WearForecast(Utility.isMetric(mContext),
+                Math.min(WearForecast.MAX_DAYS, days.size() - today));
+        for (int i = 0; i < forecast.getDayCount(); i++) {
+            ForecastRepository.Day day = days.get(today + i);
+            forecast.setDay(i, day.date, day.weatherId, day.high, day.low);
+        }
+        return forecast;
+    }
+
+    /**
+     * Queues a forecast for the watch, unless the watch already has it.
+     */
+    void publish(WearForecast forecast) {
+        byte[] payload = forecast.toBytes();
+        long hash = WearForecast.hash(payload);
+        int weatherId = forecast.getWeatherId(0);
+
+        // Putting the same bytes again would still wake the watch, so don't
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String hashKey = mContext.getString(R.string.pref_wear_payload_hash);
+        if (prefs.contains(hashKey) && prefs.getLong(hashKey, 0) == hash) {
+            mSkippedCount.incrementAndGet();
+            Log.d(LOG_TAG, "Weather data unchanged, not sending");
+            return;
+        }
+
+        // Only a change in today's conditions is worth waking the watch for right away; new
+        // temperatures or days further out can wait for the next batch
+        boolean urgent = weatherId
+                != prefs.getInt(mContext.getString(R.string.pref_wear_weather_id), -1);
+        mPending.set(new Item(payload, hash, weatherId, urgent));
+        mExecutor.execute(mFlush);
+    }
+
+    /**
+     * Sends whatever is pending.  Runs on the worker thread.
+     */
+    private void flush() {
+        Item item = mPending.getAndSet(null);
+        // If this fails the hash isn't stored, so the next sync tries again
+        if (item == null || !ensureConnected()) return;
+
+        if (mTransport.putDataItem(WearForecast.PATH, item.payload, item.urgent,
+                SEND_TIMEOUT_MILLIS)) {
+            mSentCount.incrementAndGet();
+            Log.d(LOG_TAG, "Weather data sent, " + item.payload.length + " bytes"
+                    + (item.urgent ? ", urgently" : ""));
+            PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                    .putLong(mContext.getString(R.string.pref_wear_payload_hash), item.hash)
+                    .putInt(mContext.getString(R.string.pref_wear_weather_id), item.weatherId)
+                    .apply();
+        } else {
+            mSendFailureCount.incrementAndGet();
+            Log.w(LOG_TAG, "Failed to send weather data");
+        }
+        scheduleDisconnect();
+    }
+
+    /**
+     * Connects unless already connected, and keeps the connection from being dropped while
+     * it's in use.  Runs on the worker thread.
+     *
+     * @return whether there is a connection
+     */
+    private boolean ensureConnected() {
+        if (mDisconnect != null) {
+            mDisconnect.cancel(false);
+            mDisconnect = null;
+        }
+        if (mTransport.isConnected()) return true;
+
+        long start = SystemClock.elapsedRealtime();
+        boolean connected = mTransport.connect(CONNECT_TIMEOUT_MILLIS);
+        long millis = SystemClock.elapsedRealtime() - start;
+        mConnectCount.incrementAndGet();
+        mConnectMillis.addAndGet(millis);
+        if (!connected) {
+            mConnectFailureCount.incrementAndGet();
+            Log.w(LOG_TAG, "Unable to connect to the watch after " + millis + " ms");
+            return false;
+        }
+        Log.d(LOG_TAG, "Connected to the watch in " + millis + " ms");
+        return true;
+    }
+
+    /**
+     * Runs on the worker thread once something has been sent.
+     */
+    private void scheduleDisconnect() {
+        mDisconnect = mExecutor.schedule(mDisconnectIfIdle, IDLE_DISCONNECT_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public int getConnectCount() {
+        return mConnectCount.get();
+    }
+
+    public int getConnectFailureCount() {
+        return mConnectFailureCount.get();
+    }
+
+    /**
+     * @return the time spent connecting, successfully or not, in milliseconds
+     */
+    public long getConnectMillis() {
+        return mConnectMillis.get();
+    }
+
+    public int getSentCount() {
+        return mSentCount.get();
+    }
+
+    public int getSendFailureCount() {
+        return mSendFailureCount.get();
+    }
+
+    /**
+     * @return how many forecasts weren't sent because the watch already had them
+     */
+    public int getSkippedCount() {
+        return mSkippedCount.get();
+    }
+
+    /**
+     * @return how many refresh requests from the watch were answered
+     */
+    public int getRefreshCount() {
+        return mRefreshCount.get();
+    }
+
+    /**
+     * @return how many refresh requests were ignored as too frequent or already satisfied
+     */
+    public int getRefreshSkippedCount() {
+        return mRefreshSkippedCount.get();
+    }
+
+    /**
+     * The Wearable Data and Message APIs, through a client that only exists on the worker thread.
+     */
+    private static final class GmsTransport implements Transport {
+        private final GoogleApiClient mClient;
+
+        GmsTransport(Context context) {
+            mClient = new GoogleApiClient.Builder(context)
+                    .addApi(Wearable.API)
+                    .build();
+        }
+
+        @Override
+        public boolean connect(long timeoutMillis) {
+            return mClient.blockingConnect(timeoutMillis, TimeUnit.MILLISECONDS).isSuccess();
+        }
+
+        @Override
+        public boolean isConnected() {
+            return mClient.isConnected();
+        }
+
+        @Override
+        public boolean putDataItem(String path, byte[] payload, boolean urgent,
+                                   long timeoutMillis) {
+            PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(path);
+            putDataMapRequest.getDataMap().putByteArray(WearForecast.KEY_PAYLOAD, payload);
+            if (urgent) putDataMapRequest.setUrgent();
+            PutDataRequest request = putDataMapRequest.asPutDataRequest();
+            DataApi.DataItemResult result = Wearable.DataApi.putDataItem(mClient, request)
+                    .await(timeoutMillis, TimeUnit.MILLISECONDS);
+            return result.getStatus().isSuccess();
+        }
+
+        @Override
+        public boolean sendMessage(String nodeId, String path, byte[] payload,
+                                   long timeoutMillis) {
+            return Wearable.MessageApi.sendMessage(mClient, nodeId, path, payload)
+                    .await(timeoutMillis, TimeUnit.MILLISECONDS).getStatus().isSuccess();
+        }
+
+        @Override
+        public void disconnect() {
+            mClient.disconnect();
+        }
+    }
+}
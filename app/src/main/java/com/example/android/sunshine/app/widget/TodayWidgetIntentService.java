@@ -29,6 +29,8 @@ import android.util.DisplayMetrics;
 import android.util.TypedValue;
 import android.widget.RemoteViews;
 
+import com.example.android.sunshine.app.ForecastRepository;
+import com.example.android.sunshine.app.ForecastSnapshotFile;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
@@ -61,29 +63,44 @@ public class TodayWidgetIntentService extends IntentService {
         int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
                 TodayWidgetProvider.class));
 
-        // Get today's data from the ContentProvider
+        // Get today's data from the snapshot the last sync wrote, or else the ContentProvider
+        int weatherId;
+        String description;
+        String formattedMaxTemperature;
+        String formattedMinTemperature;
         String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (data == null) {
-            return;
-        }
-        if (!data.moveToFirst()) {
+        ForecastSnapshotFile.Contents contents = ForecastSnapshotFile.read(this);
+        int today = contents == null || !contents.snapshot.locationSetting.equals(location)
+                ? -1 : contents.getTodayIndex();
+        if (today >= 0) {
+            ForecastRepository.Day day = contents.snapshot.days.get(today);
+            weatherId = day.weatherId;
+            description = day.shortDescription;
+            formattedMaxTemperature = contents.getHighText(this, today);
+            formattedMinTemperature = contents.getLowText(this, today);
+        } else {
+            Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                    location, System.currentTimeMillis());
+            Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
+                    null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+            if (data == null) {
+                return;
+            }
+            if (!data.moveToFirst()) {
+                data.close();
+                return;
+            }
+
+            // Extract the weather data from the Cursor
+            weatherId = data.getInt(INDEX_WEATHER_ID);
+            description = data.getString(INDEX_SHORT_DESC);
+            double maxTemp = data.getDouble(INDEX_MAX_TEMP);
+            double minTemp = data.getDouble(INDEX_MIN_TEMP);
+            formattedMaxTemperature = Utility.formatTemperature(this, maxTemp);
+            formattedMinTemperature = Utility.formatTemperature(this, minTemp);
             data.close();
-            return;
         }
-
-        // Extract the weather data from the Cursor
-        int weatherId = data.getInt(INDEX_WEATHER_ID);
         int weatherArtResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-        String description = data.getString(INDEX_SHORT_DESC);
-        double maxTemp = data.getDouble(INDEX_MAX_TEMP);
-        double minTemp = data.getDouble(INDEX_MIN_TEMP);
-        String formattedMaxTemperature = Utility.formatTemperature(this, maxTemp);
-        String formattedMinTemperature = Utility.formatTemperature(this, minTemp);
-        data.close();
 
         // Perform this loop procedure for each Today widget
         for (int appWidgetId : appWidgetIds) {
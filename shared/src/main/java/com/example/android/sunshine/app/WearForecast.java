@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+/**
+ * The few days of forecast the phone sends the watch, as one small byte array in the
+ * {@link #PATH} data item.  Temperatures are sent raw, in tenths of a degree Celsius, with the
+ * units the user picked, so the watch formats them itself and the payload only changes when
+ * the forecast or the units do.  There is deliberately no timestamp in it: the phone skips
+ * sending a payload whose {@link #hash} it has already sent.
+ * <p>
+ * The watch can also ask for the forecast with a {@link #REFRESH_PATH} message, which carries
+ * the hash of the payload it holds so the phone only answers if it has something newer.
+ * <p>
+ * This class is compiled into both the phone app and the watch face from the shared source
+ * set.
+ */
+public final class WearForecast {
+
+    public static final String PATH = "/weather";
+    public static final String KEY_PAYLOAD = "forecast";
+    // Messages from the watch asking for the forecast; answered with a PATH message
+    public static final String REFRESH_PATH = "/weather/refresh";
+
+    // Today plus the next three days
+    public static final int MAX_DAYS = 4;
+
+    // Must change whenever the layout written by toBytes does
+    private static final int VERSION = 1;
+
+    public final boolean isMetric;
+    // The start of each day, as the phone's normalized dates
+    private final long[] mDates;
+    private final int[] mWeatherIds;
+    // Tenths of a degree Celsius
+    private final short[] mHighs;
+    private final short[] mLows;
+
+    public WearForecast(boolean isMetric, int dayCount) {
+        if (dayCount < 0 || dayCount > MAX_DAYS) {
+            throw new IllegalArgumentException("Unsupported day count " + dayCount);
+        }
+        this.isMetric = isMetric;
+        mDates = new long[dayCount];
+        mWeatherIds = new int[dayCount];
+        mHighs = new short[dayCount];
+        mLows = new short[dayCount];
+    }
+
+    /**
+     * Fills in one day.  Days must be set in date order.
+     */
+    public void setDay(int index, long date, int weatherId, double high, double low) {
+        mDates[index] = date;
+        mWeatherIds[index] = weatherId;
+        mHighs[index] = (short) Math.round(high * 10);
+        mLows[index] = (short) Math.round(low * 10);
+    }
+
+    public int getDayCount() {
+        return mDates.length;
+    }
+
+    public long getDate(int index) {
+        return mDates[index];
+    }
+
+    public int getWeatherId(int index) {
+        return mWeatherIds[index];
+    }
+
+    /**
+     * @return the day's high in degrees Celsius
+     */
+    public double getHigh(int index) {
+        return mHighs[index] / 10.0;
+    }
+
+    /**
+     * @return the day's low in degrees Celsius
+     */
+    public double getLow(int index) {
+        return mLows[index] / 10.0;
+    }
+
+    /**
+     * @return the index of the day that time falls on, or -1 if it is before the first day or
+     * after the last one has ended
+     */
+    public int findDay(long time) {
+        for (int i = mDates.length - 1; i >= 0; i--) {
+            if (mDates[i] <= time) {
+                // The day after the last one isn't held, so the last day only lasts a day
+                return i < mDates.length - 1 || time - mDates[i] < 24 * 60 * 60 * 1000 ? i : -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Formats a temperature held in degrees Celsius in the units the payload was sent with.
+     */
+    public String formatTemperature(Context context, double celsius) {
+        double temperature = isMetric ? celsius : celsius * 1.8 + 32;
+        return context.getString(R.string.format_temperature, temperature);
+    }
+
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8 + mDates.length * 14);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(VERSION);
+            out.writeBoolean(isMetric);
+            out.writeByte(mDates.length);
+            for (int i = 0; i < mDates.length; i++) {
+                out.writeLong(mDates[i]);
+                out.writeShort(mWeatherIds[i]);
+                out.writeShort(mHighs[i]);
+                out.writeShort(mLows[i]);
+            }
+            out.flush();
+        } catch (IOException e) {
+            // Writing to memory doesn't fail
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the forecast in payload, or null if it is damaged or from another version
+     */
+    public static WearForecast fromBytes(byte[] payload) {
+        if (payload == null) return null;
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        try {
+            if (in.readByte() != VERSION) return null;
+            boolean isMetric = in.readBoolean();
+            int count = in.readByte();
+            if (count < 0 || count > MAX_DAYS) return null;
+            WearForecast forecast = new WearForecast(isMetric, count);
+            for (int i = 0; i < count; i++) {
+                forecast.mDates[i] = in.readLong();
+                forecast.mWeatherIds[i] = in.readShort();
+                forecast.mHighs[i] = in.readShort();
+                forecast.mLows[i] = in.readShort();
+            }
+            return forecast;
+        } catch (IOException e) {
+            // Truncated
+            return null;
+        }
+    }
+
+    /**
+     * @return a refresh request naming the forecast the watch holds, which may be null
+     */
+    public static byte[] createRefreshRequest(WearForecast held) {
+        if (held == null) return new byte[0];
+        long hash = hash(held.toBytes());
+        byte[] request = new byte[8];
+        for (int i = 0; i < request.length; i++) {
+            request[i] = (byte) (hash >>> (56 - 8 * i));
+        }
+        return request;
+    }
+
+    /**
+     * @return whether the watch that sent request already holds payload
+     */
+    public static boolean isHeld(byte[] request, byte[] payload) {
+        if (request == null || request.length != 8) return false;
+        long hash = 0;
+        for (byte b : request) {
+            hash = (hash << 8) | (b & 0xff);
+        }
+        return hash == hash(payload);
+    }
+
+    /**
+     * @return a checksum of an encoded payload, equal for equal payloads
+     */
+    public static long hash(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+/**
+ * Resolves an OpenWeatherMap condition code to everything shown for it with a single array
+ * lookup.  Codes are below 1000, so each table is indexed directly by the code.
+ * <p>
+ * This class is compiled into both the phone app and the watch face from the shared source
+ * set.  Both modules use this package and have the icon, art and condition string resources,
+ * so R resolves to whichever module is being built.
+ */
+public final class WeatherConditions {
+
+    // Codes are three digits; anything outside the tables is unknown
+    static final int CODE_LIMIT = 1000;
+
+    // Condition groups, which pick the icon, art and image.  0 means the code is unknown.
+    private static final int GROUP_NONE = 0;
+    private static final int GROUP_STORM = 1;
+    private static final int GROUP_LIGHT_RAIN = 2;
+    private static final int GROUP_RAIN = 3;
+    private static final int GROUP_SNOW = 4;
+    private static final int GROUP_FOG = 5;
+    private static final int GROUP_DUST = 6;
+    private static final int GROUP_CLEAR = 7;
+    private static final int GROUP_LIGHT_CLOUDS = 8;
+    private static final int GROUP_CLOUDS = 9;
+
+    // Indexed by group
+    private static final int[] ICON_RESOURCES = {
+            -1, R.drawable.ic_storm, R.drawable.ic_light_rain, R.drawable.ic_rain,
+            R.drawable.ic_snow, R.drawable.ic_fog, R.drawable.ic_storm, R.drawable.ic_clear,
+            R.drawable.ic_light_clouds, R.drawable.ic_cloudy};
+    private static final int[] ART_RESOURCES = {
+            -1, R.drawable.art_storm, R.drawable.art_light_rain, R.drawable.art_rain,
+            R.drawable.art_snow, R.drawable.art_fog, R.drawable.art_storm, R.drawable.art_clear,
+            R.drawable.art_light_clouds, R.drawable.art_clouds};
+    // Substituted into the art pack's URL format
+    private static final String[] ART_NAMES = {
+            null, "storm", "light_rain", "rain", "snow", "fog", "storm", "clear",
+            "light_clouds", "clouds"};
+    private static final String[] IMAGE_URLS = {
+            null,
+            "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg"};
+
+    // Indexed by code
+    private static final byte[] sGroups = new byte[CODE_LIMIT];
+    // 0 where the code has no string of its own
+    private static final int[] sStringIds = new int[CODE_LIMIT];
+
+    static {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        // Ranges never overwrite an earlier one, as in the original if-chain: 761 stays fog
+        // and only 781 gets the dust photo.
+        putGroup(200, 232, GROUP_STORM);
+        putGroup(300, 321, GROUP_LIGHT_RAIN);
+        putGroup(500, 504, GROUP_RAIN);
+        putGroup(511, 511, GROUP_SNOW);
+        putGroup(520, 531, GROUP_RAIN);
+        putGroup(600, 622, GROUP_SNOW);
+        putGroup(701, 761, GROUP_FOG);
+        putGroup(781, 781, GROUP_DUST);
+        putGroup(800, 800, GROUP_CLEAR);
+        putGroup(801, 801, GROUP_LIGHT_CLOUDS);
+        putGroup(802, 804, GROUP_CLOUDS);
+
+        putString(200, 232, R.string.condition_2xx);
+        putString(300, 321, R.string.condition_3xx);
+        putString(500, R.string.condition_500);
+        putString(501, R.string.condition_501);
+        putString(502, R.string.condition_502);
+        putString(503, R.string.condition_503);
+        putString(504, R.string.condition_504);
+        putString(511, R.string.condition_511);
+        putString(520, R.string.condition_520);
+        putString(531, R.string.condition_531);
+        putString(600, R.string.condition_600);
+        putString(601, R.string.condition_601);
+        putString(602, R.string.condition_602);
+        putString(611, R.string.condition_611);
+        putString(612, R.string.condition_612);
+        putString(615, R.string.condition_615);
+        putString(616, R.string.condition_616);
+        putString(620, R.string.condition_620);
+        putString(621, R.string.condition_621);
+        putString(622, R.string.condition_622);
+        putString(701, R.string.condition_701);
+        putString(711, R.string.condition_711);
+        putString(721, R.string.condition_721);
+        putString(731, R.string.condition_731);
+        putString(741, R.string.condition_741);
+        putString(751, R.string.condition_751);
+        putString(761, R.string.condition_761);
+        putString(762, R.string.condition_762);
+        putString(771, R.string.condition_771);
+        putString(781, R.string.condition_781);
+        putString(800, R.string.condition_800);
+        putString(801, R.string.condition_801);
+        putString(802, R.string.condition_802);
+        putString(803, R.string.condition_803);
+        putString(804, R.string.condition_804);
+        putString(900, R.string.condition_900);
+        putString(901, R.string.condition_901);
+        putString(902, R.string.condition_902);
+        putString(903, R.string.condition_903);
+        putString(904, R.string.condition_904);
+        putString(905, R.string.condition_905);
+        putString(906, R.string.condition_906);
+        putString(951, R.string.condition_951);
+        putString(952, R.string.condition_952);
+        putString(953, R.string.condition_953);
+        putString(954, R.string.condition_954);
+        putString(955, R.string.condition_955);
+        putString(956, R.string.condition_956);
+        putString(957, R.string.condition_957);
+        putString(958, R.string.condition_958);
+        putString(959, R.string.condition_959);
+        putString(960, R.string.condition_960);
+        putString(961, R.string.condition_961);
+        putString(962, R.string.condition_962);
+    }
+
+    private WeatherConditions() {
+    }
+
+    private static void putGroup(int first, int last, int group) {
+        for (int code = first; code <= last; code++) {
+            if (sGroups[code] == GROUP_NONE) sGroups[code] = (byte) group;
+        }
+    }
+
+    private static void putString(int first, int last, int stringId) {
+        for (int code = first; code <= last; code++) {
+            putString(code, stringId);
+        }
+    }
+
+    private static void putString(int code, int stringId) {
+        sStringIds[code] = stringId;
+    }
+
+    private static int getGroup(int weatherId) {
+        return weatherId >= 0 && weatherId < CODE_LIMIT ? sGroups[weatherId] : GROUP_NONE;
+    }
+
+    /**
+     * @return resource id for the condition's small icon, or -1 if the code is unknown
+     */
+    public static int getIconResource(int weatherId) {
+        return ICON_RESOURCES[getGroup(weatherId)];
+    }
+
+    /**
+     * @return resource id for the condition's large art, or -1 if the code is unknown
+     */
+    public static int getArtResource(int weatherId) {
+        return ART_RESOURCES[getGroup(weatherId)];
+    }
+
+    /**
+     * @return the name to substitute into an art pack's URL format, or null if the code is
+     * unknown
+     */
+    public static String getArtName(int weatherId) {
+        return ART_NAMES[getGroup(weatherId)];
+    }
+
+    /**
+     * @return URL of a photo for the condition, or null if the code is unknown
+     */
+    public static String getImageUrl(int weatherId) {
+        return IMAGE_URLS[getGroup(weatherId)];
+    }
+
+    /**
+     * @return string resource id describing the condition, or 0 if there is none, in which
+     * case R.string.condition_unknown should be formatted with the code
+     */
+    public static int getStringResource(int weatherId) {
+        return weatherId >= 0 && weatherId < CODE_LIMIT ? sStringIds[weatherId] : 0;
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+
+/**
+ * Draws the watch face in ambient mode, which is redrawn once a minute on onTimeTick.
+ * <p>
+ * Every character the time can contain is rasterized once per text size and display style,
+ * as an alpha mask, so a tick is a black fill, one blit of the pre-rendered weather and a
+ * handful of glyph blits, with no text measured or laid out.  On low-bit displays the glyphs
+ * are rasterized without anti-aliasing and placed on whole pixels, so they stay crisp.  With
+ * burn-in protection the time is drawn in outline, the icon is left out, and everything moves
+ * by a few pixels every minute.
+ */
+final class AmbientRenderer {
+
+    // Offsets, in pixels, cycled through a minute at a time under burn-in protection
+    private static final int[] SHIFT_X = {0, 2, 2, 0, -2, -2, -2, 0, 2};
+    private static final int[] SHIFT_Y = {0, 0, 2, 2, 2, 0, -2, -2, -2};
+
+    // Glyph indices: the ten digits, then the separator
+    private static final int GLYPH_COLON = 10;
+    private static final int GLYPH_COUNT = 11;
+
+    private final IconAtlas mIconAtlas;
+    private final String mAmText;
+    private final String mPmText;
+    // The digits in the default locale, as the interactive time shows them
+    private final String[] mDigits = new String[10];
+
+    private final Paint mHoursPaint;
+    private final Paint mMinutesPaint;
+    private final Paint mTempHighPaint;
+    private final Paint mTempLowPaint;
+    private final Paint mLinePaint;
+    // Gives the alpha masks their color
+    private final Paint mGlyphPaint;
+
+    private boolean mLowBit;
+    private boolean mBurnInProtection;
+    private float mTimeTop;
+    private float mLineTop;
+    private float mTempTop;
+
+    // Indexed by glyph; the hours are bold and the minutes aren't
+    private final Bitmap[] mHourGlyphs = new Bitmap[GLYPH_COUNT];
+    private final Bitmap[] mMinuteGlyphs = new Bitmap[GLYPH_COUNT];
+    private final int[] mHourAdvances = new int[GLYPH_COUNT];
+    private final int[] mMinuteAdvances = new int[GLYPH_COUNT];
+    private Bitmap mAmGlyph;
+    private Bitmap mPmGlyph;
+    // From the glyphs' tops to the baseline
+    private int mGlyphAscent;
+    private boolean mGlyphsValid;
+
+    private String mWeatherHigh;
+    private String mWeatherLow;
+    private int mWeatherId;
+    // The weather line and temperatures, on a transparent background
+    private Bitmap mWeatherLayer;
+    private boolean mWeatherLayerValid;
+    private final Canvas mLayerCanvas = new Canvas();
+
+    AmbientRenderer(int textColor, Typeface normalTypeface, Typeface boldTypeface,
+                    IconAtlas iconAtlas, String amText, String pmText) {
+        mIconAtlas = iconAtlas;
+        mAmText = amText;
+        mPmText = pmText;
+        for (int digit = 0; digit < mDigits.length; digit++) {
+            mDigits[digit] = String.format("%d", digit);
+        }
+
+        mHoursPaint = createPaint(textColor, boldTypeface);
+        mMinutesPaint = createPaint(textColor, normalTypeface);
+        mTempHighPaint = createPaint(textColor, boldTypeface);
+        mTempLowPaint = createPaint(textColor, normalTypeface);
+        mLinePaint = createPaint(textColor, normalTypeface);
+        mGlyphPaint = new Paint();
+        mGlyphPaint.setColor(textColor);
+    }
+
+    private static Paint createPaint(int color, Typeface typeface) {
+        Paint paint = new Paint();
+        paint.setColor(color);
+        paint.setTypeface(typeface);
+        paint.setAntiAlias(true);
+        return paint;
+    }
+
+    /**
+     * Takes the display's ambient properties, from onPropertiesChanged.
+     */
+    void setDisplayProperties(boolean lowBit, boolean burnInProtection) {
+        if (lowBit == mLowBit && burnInProtection == mBurnInProtection) return;
+        mLowBit = lowBit;
+        mBurnInProtection = burnInProtection;
+        Paint.Style style = burnInProtection ? Paint.Style.STROKE : Paint.Style.FILL;
+        for (Paint paint : new Paint[]{mHoursPaint, mMinutesPaint, mTempHighPaint,
+                mTempLowPaint, mLinePaint}) {
+            paint.setAntiAlias(!lowBit);
+            paint.setStyle(style);
+        }
+        mGlyphsValid = false;
+        mWeatherLayerValid = false;
+    }
+
+    /**
+     * Takes the sizes and positions picked in onApplyWindowInsets.
+     */
+    void setLayout(float timeTextSize, float tempTextSize, float timeTop, float lineTop,
+                   float tempTop) {
+        mHoursPaint.setTextSize(timeTextSize);
+        mMinutesPaint.setTextSize(timeTextSize);
+        mTempHighPaint.setTextSize(tempTextSize);
+        mTempLowPaint.setTextSize(tempTextSize);
+        mTimeTop = timeTop;
+        mLineTop = lineTop;
+        mTempTop = tempTop;
+        mGlyphsValid = false;
+        mWeatherLayerValid = false;
+    }
+
+    /**
+     * @param high today's formatted high, or null if there's no weather to show
+     */
+    void setWeather(String high, String low, int weatherId) {
+        mWeatherHigh = high;
+        mWeatherLow = low;
+        mWeatherId = weatherId;
+        mWeatherLayerValid = false;
+    }
+
+    /**
+     * Redraws the weather next time, e.g. after the icons have been remade.
+     */
+    void invalidateWeather() {
+        mWeatherLayerValid = false;
+    }
+
+    void draw(Canvas canvas, Rect bounds, long localMinutes, boolean is24Hour) {
+        if (!mGlyphsValid) rasterizeGlyphs();
+        int shift = mBurnInProtection ? (int) (localMinutes % SHIFT_X.length) : 0;
+        int dx = SHIFT_X[shift];
+        int dy = SHIFT_Y[shift];
+
+        canvas.drawColor(Color.BLACK);
+        canvas.drawBitmap(getWeatherLayer(bounds), dx, dy, null);
+
+        int minuteOfDay = (int) (localMinutes % (24 * 60));
+        int hourOfDay = minuteOfDay / 60;
+        int hour = hourOfDay;
+        if (!is24Hour) {
+            hour = hourOfDay % 12;
+            if (hour == 0) hour = 12;
+        }
+        int minute = minuteOfDay % 60;
+        Bitmap amPm = is24Hour ? null : hourOfDay < 12 ? mAmGlyph : mPmGlyph;
+
+        // Centered as the interactive time is
+        int width = mHourAdvances[hour / 10] + mHourAdvances[hour % 10]
+                + mHourAdvances[GLYPH_COLON] + mMinuteAdvances[minute / 10]
+                + mMinuteAdvances[minute % 10] + (amPm == null ? 0 : amPm.getWidth());
+        int x = bounds.centerX() - width / 2 + dx;
+        int y = Math.round(mTimeTop) - mGlyphAscent + dy;
+        x = drawGlyph(canvas, mHourGlyphs, mHourAdvances, hour / 10, x, y);
+        x = drawGlyph(canvas, mHourGlyphs, mHourAdvances, hour % 10, x, y);
+        x = drawGlyph(canvas, mHourGlyphs, mHourAdvances, GLYPH_COLON, x, y);
+        x = drawGlyph(canvas, mMinuteGlyphs, mMinuteAdvances, minute / 10, x, y);
+        x = drawGlyph(canvas, mMinuteGlyphs, mMinuteAdvances, minute % 10, x, y);
+        if (amPm != null) canvas.drawBitmap(amPm, x, y, mGlyphPaint);
+    }
+
+    private int drawGlyph(Canvas canvas, Bitmap[] glyphs, int[] advances, int glyph, int x,
+                          int y) {
+        canvas.drawBitmap(glyphs[glyph], x, y, mGlyphPaint);
+        return x + advances[glyph];
+    }
+
+    private void rasterizeGlyphs() {
+        releaseGlyphs();
+        Paint.FontMetricsInt hourMetrics = mHoursPaint.getFontMetricsInt();
+        Paint.FontMetricsInt minuteMetrics = mMinutesPaint.getFontMetricsInt();
+        mGlyphAscent = -Math.min(hourMetrics.ascent, minuteMetrics.ascent);
+        int height = mGlyphAscent + Math.max(hourMetrics.descent, minuteMetrics.descent);
+
+        for (int glyph = 0; glyph < GLYPH_COUNT; glyph++) {
+            String text = glyph == GLYPH_COLON ? ":" : mDigits[glyph];
+            mHourAdvances[glyph] = advance(mHoursPaint, text);
+            mHourGlyphs[glyph] = rasterize(mHoursPaint, text, mHourAdvances[glyph], height);
+            mMinuteAdvances[glyph] = advance(mMinutesPaint, text);
+            mMinuteGlyphs[glyph] = rasterize(mMinutesPaint, text, mMinuteAdvances[glyph],
+                    height);
+        }
+        mAmGlyph = rasterize(mMinutesPaint, mAmText, advance(mMinutesPaint, mAmText), height);
+        mPmGlyph = rasterize(mMinutesPaint, mPmText, advance(mMinutesPaint, mPmText), height);
+        mGlyphsValid = true;
+    }
+
+    private static int advance(Paint paint, String text) {
+        return (int) Math.ceil(paint.measureText(text));
+    }
+
+    private Bitmap rasterize(Paint paint, String text, int width, int height) {
+        Bitmap glyph = Bitmap.createBitmap(Math.max(1, width), height, Bitmap.Config.ALPHA_8);
+        mLayerCanvas.setBitmap(glyph);
+        mLayerCanvas.drawText(text, 0, mGlyphAscent, paint);
+        mLayerCanvas.setBitmap(null);
+        return glyph;
+    }
+
+    private Bitmap getWeatherLayer(Rect bounds) {
+        int width = bounds.width();
+        int height = bounds.height();
+        if (mWeatherLayer == null || mWeatherLayer.getWidth() != width
+                || mWeatherLayer.getHeight() != height) {
+            if (mWeatherLayer != null) mWeatherLayer.recycle();
+            mWeatherLayer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mWeatherLayerValid = false;
+        }
+        if (!mWeatherLayerValid) {
+            mWeatherLayer.eraseColor(Color.TRANSPARENT);
+            if (mWeatherHigh != null && mWeatherLow != null) {
+                mLayerCanvas.setBitmap(mWeatherLayer);
+                drawWeather(mLayerCanvas, bounds.centerX());
+                mLayerCanvas.setBitmap(null);
+            }
+            mWeatherLayerValid = true;
+        }
+        return mWeatherLayer;
+    }
+
+    private void drawWeather(Canvas canvas, float centerX) {
+        canvas.drawLine(centerX - 20, mLineTop, centerX + 20, mLineTop, mLinePaint);
+        // A lit icon is too much for a screen that can burn in
+        Bitmap icon = mBurnInProtection ? null : mIconAtlas.getIcon(mWeatherId, true);
+        float highTempLen = mTempHighPaint.measureText(mWeatherHigh);
+        float lowTempLen = mTempLowPaint.measureText(mWeatherLow);
+        float iconLen = icon == null ? 0 : icon.getWidth() + 20;
+        float xOffsetTemp = centerX - ((iconLen + highTempLen + 20 + lowTempLen) / 2);
+        if (icon != null) {
+            canvas.drawBitmap(icon, xOffsetTemp, mTempTop - icon.getHeight(), null);
+        }
+        canvas.drawText(mWeatherHigh, xOffsetTemp + iconLen, mTempTop, mTempHighPaint);
+        canvas.drawText(mWeatherLow, xOffsetTemp + iconLen + highTempLen + 20, mTempTop,
+                mTempLowPaint);
+    }
+
+    private void releaseGlyphs() {
+        for (int glyph = 0; glyph < GLYPH_COUNT; glyph++) {
+            if (mHourGlyphs[glyph] != null) mHourGlyphs[glyph].recycle();
+            if (mMinuteGlyphs[glyph] != null) mMinuteGlyphs[glyph].recycle();
+            mHourGlyphs[glyph] = null;
+            mMinuteGlyphs[glyph] = null;
+        }
+        if (mAmGlyph != null) mAmGlyph.recycle();
+        if (mPmGlyph != null) mPmGlyph.recycle();
+        mAmGlyph = null;
+        mPmGlyph = null;
+        mGlyphsValid = false;
+    }
+
+    void release() {
+        releaseGlyphs();
+        if (mWeatherLayer != null) mWeatherLayer.recycle();
+        mWeatherLayer = null;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.annotation.TargetApi;
+import android.graphics.drawable.Icon;
+import android.os.Build;
+import android.os.Handler;
+import android.support.wearable.complications.ComplicationData;
+import android.support.wearable.complications.ComplicationManager;
+import android.support.wearable.complications.ComplicationProviderService;
+import android.support.wearable.complications.ComplicationText;
+import android.util.Log;
+import android.util.SparseIntArray;
+
+/**
+ * Offers today's weather from the watch's stored forecast to other watch faces: the high and
+ * low as short text, the condition and temperatures as long text, and the condition icon.
+ * <p>
+ * Update requests are batched.  Requests that arrive together, as they do when several faces
+ * show the weather, are answered by one pass that looks the forecast up once, and that lookup
+ * is served from memory by {@link ForecastStore} after the first read in the process.  The
+ * system asks for updates no more often than the period in the manifest, since the forecast
+ * itself only changes a few times a day; {@link ForecastStore} requests one as soon as a new
+ * forecast is stored, and the watch face does when the day shown rolls over.
+ */
+@TargetApi(Build.VERSION_CODES.M)
+public class ForecastComplicationProviderService extends ComplicationProviderService {
+    private static final String TAG = ForecastComplicationProviderService.class.getSimpleName();
+
+    private final Handler mHandler = new Handler();
+    // Complication id to requested type, waiting for the next batch
+    private final SparseIntArray mPending = new SparseIntArray();
+    private ComplicationManager mManager;
+
+    private final Runnable mUpdateBatch = new Runnable() {
+        @Override
+        public void run() {
+            updatePending();
+        }
+    };
+
+    @Override
+    public void onComplicationUpdate(int complicationId, int type, ComplicationManager manager) {
+        mManager = manager;
+        if (mPending.size() == 0) mHandler.post(mUpdateBatch);
+        mPending.put(complicationId, type);
+    }
+
+    @Override
+    public void onComplicationDeactivated(int complicationId) {
+        mPending.delete(complicationId);
+    }
+
+    @Override
+    public void onDestroy() {
+        // Answer whatever is still waiting rather than dropping it
+        if (mPending.size() > 0) {
+            mHandler.removeCallbacks(mUpdateBatch);
+            updatePending();
+        }
+        super.onDestroy();
+    }
+
+    private void updatePending() {
+        if (mPending.size() == 0) return;
+        WearForecast forecast = ForecastStore.read(this);
+        int day = forecast == null ? -1 : forecast.findDay(System.currentTimeMillis());
+        Log.d(TAG, "Updating " + mPending.size() + " complications");
+        for (int i = 0; i < mPending.size(); i++) {
+            mManager.updateComplicationData(mPending.keyAt(i),
+                    createData(mPending.valueAt(i), forecast, day));
+        }
+        mPending.clear();
+    }
+
+    private ComplicationData createData(int type, WearForecast forecast, int day) {
+        if (day < 0) {
+            return new ComplicationData.Builder(ComplicationData.TYPE_NO_DATA).build();
+        }
+
+        int weatherId = forecast.getWeatherId(day);
+        String high = forecast.formatTemperature(this, forecast.getHigh(day));
+        String low = forecast.formatTemperature(this, forecast.getLow(day));
+        int iconResource = WeatherConditions.getIconResource(weatherId);
+        Icon icon = iconResource == -1 ? null : Icon.createWithResource(this, iconResource);
+
+        ComplicationData.Builder builder = new ComplicationData.Builder(type);
+        switch (type) {
+            case ComplicationData.TYPE_SHORT_TEXT:
+                builder.setShortText(ComplicationText.plainText(high))
+                        .setShortTitle(ComplicationText.plainText(low));
+                if (icon != null) builder.setIcon(icon);
+                break;
+            case ComplicationData.TYPE_LONG_TEXT:
+                builder.setLongText(ComplicationText.plainText(getString(
+                        R.string.complication_forecast, getCondition(weatherId), high, low)));
+                if (icon != null) builder.setIcon(icon);
+                break;
+            case ComplicationData.TYPE_ICON:
+                if (icon == null) {
+                    return new ComplicationData.Builder(ComplicationData.TYPE_NO_DATA).build();
+                }
+                builder.setIcon(icon);
+                break;
+            default:
+                Log.w(TAG, "Unexpected complication type " + type);
+                return new ComplicationData.Builder(ComplicationData.TYPE_NO_DATA).build();
+        }
+        return builder.build();
+    }
+
+    private String getCondition(int weatherId) {
+        int stringId = WeatherConditions.getStringResource(weatherId);
+        return stringId != 0 ? getString(stringId)
+                : getString(R.string.condition_unknown, weatherId);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Build;
+import android.support.wearable.complications.ProviderUpdateRequester;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * The last forecast the phone sent, kept on the watch so that a new engine can show the
+ * weather straight away and the face can move on to the next day's forecast at midnight
+ * without asking the phone.  The file holds the {@link WearForecast} payload exactly as it was
+ * received, which is versioned already and only a few dozen bytes, so reading it on the main
+ * thread when the engine is created is cheap.
+ * <p>
+ * Everything stored goes through {@link #write}, so the process keeps the last forecast read
+ * or written, and the watch face and every complication asking for it share one read.  It is
+ * also where complications showing the forecast are told that it has changed.
+ */
+final class ForecastStore {
+    private static final String TAG = ForecastStore.class.getSimpleName();
+
+    private static final String FILE_NAME = "forecast.bin";
+
+    // Guarded by the class
+    private static boolean sLoaded;
+    private static WearForecast sForecast;
+
+    private ForecastStore() {
+    }
+
+    private static AtomicFile getFile(Context context) {
+        return new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+    }
+
+    /**
+     * @return the stored forecast, or null if nothing usable has been stored
+     */
+    static synchronized WearForecast read(Context context) {
+        if (!sLoaded) {
+            sForecast = readFile(context);
+            sLoaded = true;
+        }
+        return sForecast;
+    }
+
+    private static WearForecast readFile(Context context) {
+        try {
+            return WearForecast.fromBytes(getFile(context).readFully());
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read the stored forecast", e);
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the stored forecast with a payload as received from the phone, and has every
+     * complication showing it updated.
+     */
+    static void write(Context context, byte[] payload) {
+        synchronized (ForecastStore.class) {
+            sForecast = WearForecast.fromBytes(payload);
+            sLoaded = true;
+        }
+        AtomicFile file = getFile(context);
+        FileOutputStream stream = null;
+        try {
+            stream = file.startWrite();
+            stream.write(payload);
+            file.finishWrite(stream);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to store the forecast", e);
+            if (stream != null) file.failWrite(stream);
+        }
+        // The process already serves the new forecast even if the file couldn't be written
+        requestComplicationUpdate(context);
+    }
+
+    /**
+     * Has every complication showing the forecast updated now rather than when its update
+     * period next comes round, e.g. once the day it shows has passed.
+     */
+    static void requestComplicationUpdate(Context context) {
+        // The provider is only offered where complications exist
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) return;
+        new ProviderUpdateRequester(context, new ComponentName(context,
+                ForecastComplicationProviderService.class)).requestUpdateAll();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Benchmark harness for the watch face's draw path.  Times every frame and counts the objects
+ * it allocates, and logs a summary every {@link #FRAMES_PER_REPORT} frames.  Timer and time
+ * tick wakeups are counted too and reported per hour, since each one costs battery whether or
+ * not it draws.  Ambient frames, which come once a minute, also have the thread's CPU time
+ * measured and are summarized every {@link #AMBIENT_FRAMES_PER_REPORT} ticks, since that is
+ * what a tick costs the battery while the watch sits idle.  Off unless enabled with
+ * <pre>
+ *     adb shell setprop log.tag.FrameStats DEBUG
+ * </pre>
+ * before the watch face is selected, so normal use pays for one boolean check per frame.
+ * Everything here is called on the watch face's main thread.
+ */
+final class FrameStats {
+    private static final String TAG = FrameStats.class.getSimpleName();
+
+    static final int FRAMES_PER_REPORT = 60;
+    static final int AMBIENT_FRAMES_PER_REPORT = 15;
+
+    private final boolean mEnabled;
+
+    private long mFrameStartNanos;
+    private int mFrameStartAllocs;
+    private long mFrameStartCpuNanos;
+
+    private int mFrames;
+    private long mTotalNanos;
+    private long mMaxNanos;
+    private long mTotalAllocs;
+    private int mWakeups;
+    private long mReportStartMillis = SystemClock.elapsedRealtime();
+
+    private int mAmbientFrames;
+    private long mAmbientCpuNanos;
+    private long mAmbientMaxCpuNanos;
+
+    FrameStats() {
+        mEnabled = Log.isLoggable(TAG, Log.DEBUG);
+        if (mEnabled) {
+            // Per process, and only counted while on
+            Debug.startAllocCounting();
+        }
+    }
+
+    boolean isEnabled() {
+        return mEnabled;
+    }
+
+    void beginFrame() {
+        if (!mEnabled) return;
+        mFrameStartAllocs = Debug.getThreadAllocCount();
+        mFrameStartCpuNanos = Debug.threadCpuTimeNanos();
+        mFrameStartNanos = SystemClock.elapsedRealtimeNanos();
+    }
+
+    void countWakeup() {
+        if (mEnabled) mWakeups++;
+    }
+
+    /**
+     * @param ambient whether the frame was drawn in ambient mode
+     */
+    void endFrame(boolean ambient) {
+        if (!mEnabled) return;
+        long nanos = SystemClock.elapsedRealtimeNanos() - mFrameStartNanos;
+        if (ambient) {
+            long cpuNanos = Debug.threadCpuTimeNanos() - mFrameStartCpuNanos;
+            mAmbientCpuNanos += cpuNanos;
+            if (cpuNanos > mAmbientMaxCpuNanos) mAmbientMaxCpuNanos = cpuNanos;
+            if (++mAmbientFrames == AMBIENT_FRAMES_PER_REPORT) reportAmbient();
+        }
+        mTotalAllocs += Debug.getThreadAllocCount() - mFrameStartAllocs;
+        mTotalNanos += nanos;
+        if (nanos > mMaxNanos) mMaxNanos = nanos;
+        if (++mFrames == FRAMES_PER_REPORT) report();
+    }
+
+    private void report() {
+        long now = SystemClock.elapsedRealtime();
+        double hours = Math.max(1, now - mReportStartMillis) / 3600000.0;
+        Log.d(TAG, String.format("%d frames: %.3f ms average, %.3f ms worst, %.1f allocations"
+                        + " per frame, %.0f wakeups per hour", mFrames,
+                mTotalNanos / 1e6 / mFrames, mMaxNanos / 1e6, (double) mTotalAllocs / mFrames,
+                mWakeups / hours));
+        mReportStartMillis = now;
+        mWakeups = 0;
+        mFrames = 0;
+        mTotalNanos = 0;
+        mMaxNanos = 0;
+        mTotalAllocs = 0;
+    }
+
+    private void reportAmbient() {
+        Log.d(TAG, String.format("%d ambient ticks: %.3f ms CPU average, %.3f ms CPU worst",
+                mAmbientFrames, mAmbientCpuNanos / 1e6 / mAmbientFrames,
+                mAmbientMaxCpuNanos / 1e6));
+        mAmbientFrames = 0;
+        mAmbientCpuNanos = 0;
+        mAmbientMaxCpuNanos = 0;
+    }
+
+    void release() {
+        if (mEnabled) Debug.stopAllocCounting();
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+
+/**
+ * Every condition icon, decoded and scaled to the weather text's size once, with a variant
+ * for ambient mode.  Looking an icon up is a couple of array reads, so showing new weather
+ * allocates nothing.
+ * <p>
+ * Icons are kept for the last {@link #MAX_SIZES} sizes, so switching back to a size, e.g. when
+ * the insets are applied again, doesn't decode anything.  The least recently configured size
+ * is recycled when another one is needed.  Everything here is called on the main thread.
+ */
+final class IconAtlas {
+
+    // Sizes kept at once
+    static final int MAX_SIZES = 2;
+
+    // Alpha below which a low-bit ambient pixel is left off
+    private static final int LOW_BIT_ALPHA_THRESHOLD = 0x80;
+
+    private final Resources mResources;
+    // Each distinct icon resource, in the order of the bitmap arrays below
+    private final int[] mIconResources;
+
+    // The cached sizes, most recently configured first.  A size is 0 where nothing is cached,
+    // and keyed together with the ambient style the variants were made in.
+    private final int[] mSizes = new int[MAX_SIZES];
+    private final boolean[] mLowBit = new boolean[MAX_SIZES];
+    private final Bitmap[][] mInteractiveIcons = new Bitmap[MAX_SIZES][];
+    private final Bitmap[][] mAmbientIcons = new Bitmap[MAX_SIZES][];
+
+    IconAtlas(Resources resources) {
+        mResources = resources;
+        int[] icons = new int[WeatherConditions.CODE_LIMIT];
+        int count = 0;
+        for (int code = 0; code < WeatherConditions.CODE_LIMIT; code++) {
+            int icon = WeatherConditions.getIconResource(code);
+            if (icon != -1 && indexOf(icons, count, icon) < 0) icons[count++] = icon;
+        }
+        mIconResources = new int[count];
+        System.arraycopy(icons, 0, mIconResources, 0, count);
+    }
+
+    /**
+     * Makes size the current icon height, scaling every icon unless that size is cached.
+     *
+     * @param lowBitAmbient whether ambient icons must be drawn with single bit pixels
+     */
+    void configure(int size, boolean lowBitAmbient) {
+        if (size <= 0) return;
+        int slot = 0;
+        while (slot < MAX_SIZES && (mSizes[slot] != size || mLowBit[slot] != lowBitAmbient)) {
+            slot++;
+        }
+        if (slot == 0) return;
+
+        Bitmap[] interactive;
+        Bitmap[] ambient;
+        if (slot < MAX_SIZES) {
+            interactive = mInteractiveIcons[slot];
+            ambient = mAmbientIcons[slot];
+        } else {
+            // Make room by recycling the least recently configured size
+            slot = MAX_SIZES - 1;
+            recycle(slot);
+            interactive = new Bitmap[mIconResources.length];
+            ambient = new Bitmap[mIconResources.length];
+            for (int i = 0; i < mIconResources.length; i++) {
+                interactive[i] = decodeScaled(mIconResources[i], size);
+                ambient[i] = createAmbientVariant(interactive[i], lowBitAmbient);
+            }
+        }
+
+        // Move the slot to the front
+        for (int i = slot; i > 0; i--) {
+            mSizes[i] = mSizes[i - 1];
+            mLowBit[i] = mLowBit[i - 1];
+            mInteractiveIcons[i] = mInteractiveIcons[i - 1];
+            mAmbientIcons[i] = mAmbientIcons[i - 1];
+        }
+        mSizes[0] = size;
+        mLowBit[0] = lowBitAmbient;
+        mInteractiveIcons[0] = interactive;
+        mAmbientIcons[0] = ambient;
+    }
+
+    /**
+     * @return the configured size, or 0 if none has been
+     */
+    int getSize() {
+        return mSizes[0];
+    }
+
+    /**
+     * @return the condition's icon at the configured size, or null if the condition is
+     * unknown or no size has been configured
+     */
+    Bitmap getIcon(int weatherId, boolean ambient) {
+        Bitmap[] icons = ambient ? mAmbientIcons[0] : mInteractiveIcons[0];
+        if (icons == null) return null;
+        int index = indexOf(mIconResources, mIconResources.length,
+                WeatherConditions.getIconResource(weatherId));
+        return index < 0 ? null : icons[index];
+    }
+
+    void release() {
+        for (int slot = 0; slot < MAX_SIZES; slot++) {
+            recycle(slot);
+        }
+    }
+
+    private void recycle(int slot) {
+        recycle(mInteractiveIcons[slot]);
+        recycle(mAmbientIcons[slot]);
+        mInteractiveIcons[slot] = null;
+        mAmbientIcons[slot] = null;
+        mSizes[slot] = 0;
+    }
+
+    private static void recycle(Bitmap[] bitmaps) {
+        if (bitmaps == null) return;
+        for (Bitmap bitmap : bitmaps) {
+            bitmap.recycle();
+        }
+    }
+
+    private Bitmap decodeScaled(int resource, int height) {
+        Bitmap decoded = BitmapFactory.decodeResource(mResources, resource);
+        int width = Math.max(1, Math.round((float) height * decoded.getWidth()
+                / decoded.getHeight()));
+        Bitmap scaled = Bitmap.createScaledBitmap(decoded, width, height, true);
+        if (scaled != decoded) decoded.recycle();
+        return scaled;
+    }
+
+    /**
+     * Ambient icons are grey, or white where the icon is mostly opaque and clear elsewhere
+     * when the screen only has a bit per color.
+     */
+    private static Bitmap createAmbientVariant(Bitmap icon, boolean lowBit) {
+        int width = icon.getWidth();
+        int height = icon.getHeight();
+        int[] pixels = new int[width * height];
+        icon.getPixels(pixels, 0, width, 0, 0, width, height);
+        for (int i = 0; i < pixels.length; i++) {
+            int pixel = pixels[i];
+            int alpha = Color.alpha(pixel);
+            if (lowBit) {
+                pixels[i] = alpha >= LOW_BIT_ALPHA_THRESHOLD ? Color.WHITE : Color.TRANSPARENT;
+            } else {
+                int grey = (Color.red(pixel) * 77 + Color.green(pixel) * 151
+                        + Color.blue(pixel) * 28) >> 8;
+                pixels[i] = Color.argb(alpha, grey, grey, grey);
+            }
+        }
+        return Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    private static int indexOf(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) return i;
+        }
+        return -1;
+    }
+}
@@ -20,18 +20,18 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.SharedPreferences;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
-import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.Typeface;
-import android.graphics.drawable.BitmapDrawable;
-import android.graphics.drawable.Drawable;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
+import android.preference.PreferenceManager;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
 import android.text.format.DateFormat;
@@ -42,11 +42,16 @@ import android.widget.Toast;
 
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
 import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.MessageApi;
+import com.google.android.gms.wearable.MessageEvent;
+import com.google.android.gms.wearable.Node;
+import com.google.android.gms.wearable.NodeApi;
 import com.google.android.gms.wearable.Wearable;
 
 import java.lang.ref.WeakReference;
@@ -55,8 +60,9 @@ import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Digital watch face with seconds. In ambient mode, the seconds aren't displayed. On devices with
- * low-bit ambient mode, the text is drawn without anti-aliasing in ambient mode.
+ * Digital watch face showing hours and minutes, redrawn once a minute in both modes. Ambient
+ * mode is drawn by an {@link AmbientRenderer}, from glyphs rasterized for the display's low-bit
+ * and burn-in protection properties.
  */
 public class MyWatchFace extends CanvasWatchFaceService
 {
@@ -69,16 +75,26 @@ public class MyWatchFace extends CanvasWatchFaceService
             Typeface.create(Typeface.SANS_SERIF,Typeface.BOLD);
 
     /**
-     * Update rate in milliseconds for interactive mode. We update once a second since seconds are
-     * displayed in interactive mode.
+     * Update rate in milliseconds for interactive mode. Only hours and minutes are displayed, so
+     * the timer wakes on minute boundaries; in ambient mode onTimeTick does the same.
      */
-    private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.SECONDS.toMillis(1);
+    private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.MINUTES.toMillis(1);
 
     /**
      * Handler message id for updating the time periodically in interactive mode.
      */
     private static final int MSG_UPDATE_TIME = 0;
 
+    private static final long MINUTE_IN_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    /**
+     * The watch asks the phone for the forecast when it connects, but no more often than this,
+     * however often the face is shown.  The phone rate-limits the answers as well.
+     */
+    private static final long REFRESH_MIN_INTERVAL_MS = TimeUnit.MINUTES.toMillis(15);
+    private static final String PREF_LAST_REFRESH_REQUEST = "last_refresh_request";
+
     @Override
     public Engine onCreateEngine() {
         return new Engine();
@@ -104,21 +120,16 @@ public class MyWatchFace extends CanvasWatchFaceService
         }
     }
 
-    private class Engine extends CanvasWatchFaceService.Engine implements DataApi.DataListener, GoogleApiClient.ConnectionCallbacks,GoogleApiClient.OnConnectionFailedListener
+    private class Engine extends CanvasWatchFaceService.Engine implements DataApi.DataListener, MessageApi.MessageListener, GoogleApiClient.ConnectionCallbacks,GoogleApiClient.OnConnectionFailedListener
     {
-        private static final String WEATHER_PATH = "/weather";
-        private static final String KEY_TIME="time";
-        private static final String KEY_HIGH = "high";
-        private static final String KEY_LOW = "low";
-        private static final String KEY_WEATHER_ID = "weatherId";
-
         final Handler mUpdateTimeHandler = new EngineHandler(this);
         Calendar mCalendar;
 
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mCalendar.setTimeZone(TimeZone.getDefault());
+                // Also sent when the 12/24 hour setting changes
+                updateTimeSettings();
                 invalidate();
             }
         };
@@ -138,15 +149,53 @@ public class MyWatchFace extends CanvasWatchFaceService
         Paint mTextTempHighPaint;
         Paint mTextTempLowPaint;
 
-        Paint mTextTimeHoursAmbientPaint;
-        Paint mTextTimeMinutesAmbientPaint;
-        Paint mTextTempHighAmbientPaint;
-        Paint mTextTempLowAmbientPaint;
-
-        Bitmap mWeatherIcon;
+        // The stored forecast, and the day of it shown below, or -1 if none is
+        WearForecast mForecast;
+        int mForecastDay = -1;
+        int mWeatherId;
         String mWeatherHigh;
         String mWeatherLow;
 
+        // Read when the settings may have changed, rather than on every frame
+        TimeZone mTimeZone;
+        boolean mIs24Hour;
+
+        // Zero padded, in the default locale's digits, so drawing the time formats nothing
+        String[] mHourTexts;
+        String[] mMinuteTexts;
+        String mAmText;
+        String mPmText;
+
+        // Laid out time, valid while mTimeLayoutKey matches the minute and the settings
+        long mTimeLayoutKey = -1;
+        String mHourText;
+        String mMinuteText;
+        String mAmPmText;
+        float mHourTextX;
+        float mMinuteTextX;
+        float mAmPmTextX;
+
+        // Everything but the time, pre-rendered for interactive mode.  The layer shows the local
+        // day mLayerDay, and is redrawn after the day, the weather or the layout changes.
+        Bitmap mInteractiveLayer;
+        boolean mInteractiveLayerValid;
+        final Canvas mLayerCanvas = new Canvas();
+        long mLayerDay = Long.MIN_VALUE;
+
+        // The local minute last drawn, so timer wakeups that change nothing don't redraw
+        long mDrawnMinute = -1;
+
+        // The center the layouts above were computed for
+        float mLayoutCenterX = Float.NaN;
+
+        // The weather icons at the temperature text's size
+        IconAtlas mIconAtlas;
+
+        // Draws every ambient frame, with its own glyphs and weather layer
+        AmbientRenderer mAmbientRenderer;
+
+        FrameStats mFrameStats;
+
         boolean mAmbient;
 
         float mTimeTopOffset;
@@ -164,6 +213,12 @@ public class MyWatchFace extends CanvasWatchFaceService
          */
         boolean mLowBitAmbient;
 
+        /**
+         * Whether the display needs burn-in protection in ambient mode. When true, the ambient
+         * time is outlined and moved a little every minute.
+         */
+        boolean mBurnInProtection;
+
         @Override
         public void onCreate(SurfaceHolder holder) {
             super.onCreate(holder);
@@ -189,20 +244,57 @@ public class MyWatchFace extends CanvasWatchFaceService
             mTextTempHighPaint=createTextPaint(resources.getColor(R.color.digital_text),BOLD_TYPEFACE);
             mTextTempLowPaint=createTextPaint(resources.getColor(R.color.digital_text),NORMAL_TYPEFACE);
 
-            mTextTimeHoursAmbientPaint=createTextPaint(resources.getColor(R.color.digital_text),BOLD_TYPEFACE);
-            mTextTimeMinutesAmbientPaint=createTextPaint(resources.getColor(R.color.digital_text),NORMAL_TYPEFACE);
-            mTextTempHighAmbientPaint=createTextPaint(resources.getColor(R.color.digital_text),BOLD_TYPEFACE);
-            mTextTempLowAmbientPaint=createTextPaint(resources.getColor(R.color.digital_text),NORMAL_TYPEFACE);
-
             mCalendar = Calendar.getInstance();
+
+            mHourTexts = new String[24];
+            for (int hour = 0; hour < mHourTexts.length; hour++) {
+                mHourTexts[hour] = String.format("%02d:", hour);
+            }
+            mMinuteTexts = new String[60];
+            for (int minute = 0; minute < mMinuteTexts.length; minute++) {
+                mMinuteTexts[minute] = String.format("%02d", minute);
+            }
+            mAmText = Utility.getAmPmString(resources, Calendar.AM);
+            mPmText = Utility.getAmPmString(resources, Calendar.PM);
+            updateTimeSettings();
+
+            // Shown from the first frame; the day is picked when that frame sees a new day
+            mForecast = ForecastStore.read(MyWatchFace.this);
+
+            mIconAtlas = new IconAtlas(resources);
+            mAmbientRenderer = new AmbientRenderer(resources.getColor(R.color.digital_text),
+                    NORMAL_TYPEFACE, BOLD_TYPEFACE, mIconAtlas, mAmText, mPmText);
+            mFrameStats = new FrameStats();
         }
 
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mFrameStats.release();
+            mIconAtlas.release();
+            mAmbientRenderer.release();
+            if (mInteractiveLayer != null) mInteractiveLayer.recycle();
             super.onDestroy();
         }
 
+        /**
+         * Reads the time zone and the 12/24 hour setting, and drops every layout that depends
+         * on them.
+         */
+        private void updateTimeSettings() {
+            mTimeZone = TimeZone.getDefault();
+            mCalendar.setTimeZone(mTimeZone);
+            mIs24Hour = DateFormat.is24HourFormat(MyWatchFace.this);
+            mTimeLayoutKey = -1;
+            // The day may have changed with the zone
+            mLayerDay = Long.MIN_VALUE;
+        }
+
+        private void invalidateLayers() {
+            mInteractiveLayerValid = false;
+            mAmbientRenderer.invalidateWeather();
+        }
+
         private Paint createTextPaint(int textColor,Typeface typeface)
         {
             Paint paint = new Paint();
@@ -220,8 +312,8 @@ public class MyWatchFace extends CanvasWatchFaceService
             {
                 client.connect();
                 registerReceiver();
-                // Update time zone in case it changed while we weren't visible.
-                mCalendar.setTimeZone(TimeZone.getDefault());
+                // Update time zone and format in case they changed while we weren't visible.
+                updateTimeSettings();
                 invalidate();
             }
             else
@@ -230,6 +322,7 @@ public class MyWatchFace extends CanvasWatchFaceService
                 if(client!=null && client.isConnected())
                 {
                     Wearable.DataApi.removeListener(client,this);
+                    Wearable.MessageApi.removeListener(client,this);
                     client.disconnect();
                 }
             }
@@ -245,6 +338,7 @@ public class MyWatchFace extends CanvasWatchFaceService
             }
             mRegisteredTimeZoneReceiver = true;
             IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+            filter.addAction(Intent.ACTION_TIME_CHANGED);
             MyWatchFace.this.registerReceiver(mTimeZoneReceiver, filter);
         }
 
@@ -283,43 +377,53 @@ public class MyWatchFace extends CanvasWatchFaceService
             mTextDatePaint.setTextSize(dateTextSize);
             mTextTempHighPaint.setTextSize(tempTextSize);
             mTextTempLowPaint.setTextSize(tempTextSize);
+            mAmbientRenderer.setLayout(timeTextSize, tempTextSize, mTimeTopOffset,
+                    mLineTopOffset, mTempTopOffset);
 
-            mTextTimeHoursAmbientPaint.setTextSize(timeTextSize);
-            mTextTimeMinutesAmbientPaint.setTextSize(timeTextSize);
-            mTextTempHighAmbientPaint.setTextSize(tempTextSize);
-            mTextTempLowAmbientPaint.setTextSize(tempTextSize);
+            mIconAtlas.configure((int) tempTextSize, mLowBitAmbient);
+
+            // Every width changes with the text size
+            mTimeLayoutKey = -1;
+            invalidateLayers();
         }
 
         @Override
         public void onPropertiesChanged(Bundle properties) {
             super.onPropertiesChanged(properties);
             mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            mBurnInProtection = properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false);
+            mAmbientRenderer.setDisplayProperties(mLowBitAmbient, mBurnInProtection);
+            // Remade in the new style if the insets have already picked a size
+            if (mIconAtlas.getSize() > 0) {
+                mIconAtlas.configure(mIconAtlas.getSize(), mLowBitAmbient);
+                invalidateLayers();
+            }
         }
 
         @Override
         public void onTimeTick() {
             super.onTimeTick();
-            invalidate();
+            mFrameStats.countWakeup();
+            invalidateIfTimeChanged();
+        }
+
+        /**
+         * Redraws only if the minute on screen is out of date.  The surface is always redrawn
+         * whole, but the layers keep that down to a blit and the clock digits.
+         */
+        private void invalidateIfTimeChanged() {
+            long now = System.currentTimeMillis();
+            if ((now + mTimeZone.getOffset(now)) / MINUTE_IN_MILLIS != mDrawnMinute) {
+                invalidate();
+            }
         }
 
         @Override
         public void onAmbientModeChanged(boolean inAmbientMode) {
             super.onAmbientModeChanged(inAmbientMode);
             if (mAmbient != inAmbientMode) {
+                // Each mode has its own paints, so switching only needs a redraw
                 mAmbient = inAmbientMode;
-                if (mLowBitAmbient) {
-                    mTextTimeHoursPaint.setAntiAlias(!inAmbientMode);
-                    mTextTimeHoursPaint.setAntiAlias(!inAmbientMode);
-                    mTextTimeMinutesPaint.setAntiAlias(!inAmbientMode);
-                    mTextDatePaint.setAntiAlias(!inAmbientMode);
-                    mTextTempHighPaint.setAntiAlias(!inAmbientMode);
-                    mTextTempLowPaint.setAntiAlias(!inAmbientMode);
-
-                    mTextTimeHoursAmbientPaint.setAntiAlias(!inAmbientMode);
-                    mTextTimeMinutesAmbientPaint.setAntiAlias(!inAmbientMode);
-                    mTextTempHighAmbientPaint.setAntiAlias(!inAmbientMode);
-                    mTextTempLowAmbientPaint.setAntiAlias(!inAmbientMode);
-                }
                 invalidate();
             }
             // Whether the timer should be running depends on whether we're visible (as well as
@@ -334,105 +438,144 @@ public class MyWatchFace extends CanvasWatchFaceService
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            // Draw the background.
-            if (isInAmbientMode()) {
-                canvas.drawColor(Color.BLACK);
-            } else {
-                canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
+            mFrameStats.beginFrame();
+
+            float centerX = bounds.centerX();
+            if (centerX != mLayoutCenterX) {
+                mLayoutCenterX = centerX;
+                mTimeLayoutKey = -1;
+                invalidateLayers();
             }
 
-            // Draw H:MM in ambient mode or H:MM:SS in interactive mode.
+            // The local time, without going through the calendar on every frame
             long now = System.currentTimeMillis();
-            mCalendar.setTimeInMillis(now);
-
-            boolean is24Hour= DateFormat.is24HourFormat(MyWatchFace.this);
-            int minute=mCalendar.get(Calendar.MINUTE);
-            int am_pm=mCalendar.get(Calendar.AM_PM);
-
-            String hourText;
-            String minuteText;
-            int hour;
-            if(is24Hour)
-                hour=mCalendar.get(Calendar.HOUR_OF_DAY);
-            else
-            {
-                hour=mCalendar.get(Calendar.HOUR);
-                if(hour==0)
-                    hour=12;
+            long localMinutes = (now + mTimeZone.getOffset(now)) / MINUTE_IN_MILLIS;
+            long localDay = localMinutes / MINUTES_PER_DAY;
+            if (localDay != mLayerDay) {
+                mLayerDay = localDay;
+                invalidateLayers();
+                // Rolls over to the next day's forecast at midnight
+                selectForecastDay(now);
             }
+            mDrawnMinute = localMinutes;
 
-            hourText=String.format("%02d:",hour);
-            minuteText=String.format("%02d",minute);
-            String amPmText=String.format(Utility.getAmPmString(getResources(),am_pm));
+            if (mAmbient) {
+                mAmbientRenderer.draw(canvas, bounds, localMinutes, mIs24Hour);
+                mFrameStats.endFrame(true);
+                return;
+            }
 
-            float hourTextLen=mTextTimeHoursPaint.measureText(hourText);
-            float minuteTextLen=mTextTimeMinutesPaint.measureText(minuteText);
-            float xOffsetTime=(hourTextLen+minuteTextLen)/2;
+            // The background, date and weather only change a few times a day
+            canvas.drawBitmap(getLayer(bounds, now), 0, 0, null);
 
-            if(!is24Hour)
-                xOffsetTime+=(mTextTimeMinutesPaint.measureText(amPmText)/2);
+            // Draw HH:MM, with AM/PM when not using the 24 hour format.
+            updateTimeLayout(localMinutes, centerX);
+            canvas.drawText(mHourText, mHourTextX, mTimeTopOffset, mTextTimeHoursPaint);
+            canvas.drawText(mMinuteText, mMinuteTextX, mTimeTopOffset, mTextTimeMinutesPaint);
+            if (mAmPmText != null) {
+                canvas.drawText(mAmPmText, mAmPmTextX, mTimeTopOffset, mTextTimeMinutesPaint);
+            }
 
-            float xOffsetTimeFromCenter=bounds.centerX()-xOffsetTime;
+            mFrameStats.endFrame(false);
+        }
 
-            if(mAmbient)
-            {
-                canvas.drawText(hourText,xOffsetTimeFromCenter,mTimeTopOffset,mTextTimeHoursAmbientPaint);
-                canvas.drawText(minuteText,xOffsetTimeFromCenter+hourTextLen,mTimeTopOffset,mTextTimeMinutesAmbientPaint);
-                if(!is24Hour)
-                    canvas.drawText(amPmText,xOffsetTimeFromCenter+hourTextLen+minuteTextLen,mTimeTopOffset,mTextTimeMinutesAmbientPaint);
+        /**
+         * Returns the interactive layer, drawing it first if it's out of date.
+         */
+        private Bitmap getLayer(Rect bounds, long now) {
+            int width = bounds.width();
+            int height = bounds.height();
+            if (mInteractiveLayer == null || mInteractiveLayer.getWidth() != width
+                    || mInteractiveLayer.getHeight() != height) {
+                if (mInteractiveLayer != null) mInteractiveLayer.recycle();
+                mInteractiveLayer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                mInteractiveLayerValid = false;
             }
-            else
-            {
-                canvas.drawText(hourText,xOffsetTimeFromCenter,mTimeTopOffset,mTextTimeHoursPaint);
-                canvas.drawText(minuteText,xOffsetTimeFromCenter+hourTextLen,mTimeTopOffset,mTextTimeMinutesPaint);
-                if(!is24Hour)
-                    canvas.drawText(amPmText,xOffsetTimeFromCenter+hourTextLen+minuteTextLen,mTimeTopOffset,mTextTimeMinutesPaint);
+            if (!mInteractiveLayerValid) {
+                mLayerCanvas.setBitmap(mInteractiveLayer);
+                drawLayer(mLayerCanvas, width, height, bounds.centerX(), now);
+                mLayerCanvas.setBitmap(null);
+                mInteractiveLayerValid = true;
             }
+            return mInteractiveLayer;
+        }
 
-
-            Resources resources=getResources();
-
-            if(!mAmbient)
-            {
-                //Drawing the day and date only in interactive mode.
-                String dayOfTheWeek=Utility.getDayOfWeekString(resources,mCalendar.get(Calendar.DAY_OF_WEEK));
-                String monthOfTheYear=Utility.getMonthOfYearString(resources,mCalendar.get(Calendar.MONTH));
-
-                int dayOfMonth=mCalendar.get(Calendar.DAY_OF_MONTH);
-                int year=mCalendar.get(Calendar.YEAR);
-
-                String dayDateText=String.format("%s, %s %d %d",dayOfTheWeek,monthOfTheYear,dayOfMonth,year);
-                float xOffsetDate=mTextDatePaint.measureText(dayDateText)/2;
-                canvas.drawText(dayDateText,bounds.centerX()-xOffsetDate,mDateTopOffset,mTextDatePaint);
+        /**
+         * Draws everything but the time in interactive mode.
+         */
+        private void drawLayer(Canvas canvas, int width, int height, float centerX, long now) {
+            // Draw the background.
+            canvas.drawRect(0, 0, width, height, mBackgroundPaint);
+
+            String dateText = formatDate(now);
+            canvas.drawText(dateText, centerX - mTextDatePaint.measureText(dateText) / 2,
+                    mDateTopOffset, mTextDatePaint);
+
+            //Drawing high and low temp if we have it, after the icon if the condition has one.
+            if (mWeatherHigh != null && mWeatherLow != null) {
+                canvas.drawLine(centerX - 20, mLineTopOffset, centerX + 20, mLineTopOffset,
+                        mTextDatePaint);
+
+                Bitmap icon = mIconAtlas.getIcon(mWeatherId, false);
+                float highTempLen = mTextTempHighPaint.measureText(mWeatherHigh);
+                float lowTempLen = mTextTempLowPaint.measureText(mWeatherLow);
+                float iconLen = icon == null ? 0 : icon.getWidth() + 20;
+                float xOffsetTemp = centerX - ((iconLen + highTempLen + 20 + lowTempLen) / 2);
+                if (icon != null) {
+                    canvas.drawBitmap(icon, xOffsetTemp, mTempTopOffset - icon.getHeight(),
+                            null);
+                }
+                canvas.drawText(mWeatherHigh, xOffsetTemp + iconLen, mTempTopOffset,
+                        mTextTempHighPaint);
+                canvas.drawText(mWeatherLow, xOffsetTemp + iconLen + highTempLen + 20,
+                        mTempTopOffset, mTextTempLowPaint);
             }
+        }
 
-            //Drawing high and low temp if we have it.
-            if(mWeatherHigh!=null && mWeatherLow!=null && mWeatherIcon!=null)
-            {
-                canvas.drawLine(bounds.centerX()-20,mLineTopOffset,bounds.centerX()+20,mLineTopOffset,mTextDatePaint);
-
-                float highTempLen;
-                float lowTempLen;
-                float xOffsetTemp;
-
-                if(mAmbient)
-                {
-                    highTempLen=mTextTempHighAmbientPaint.measureText(mWeatherHigh);
-                    lowTempLen=mTextTempLowAmbientPaint.measureText(mWeatherLow);
-                    xOffsetTemp=bounds.centerX()-((highTempLen+lowTempLen+20)/2);
-                    canvas.drawText(mWeatherHigh,xOffsetTemp,mTempTopOffset,mTextTempHighAmbientPaint);
-                    canvas.drawText(mWeatherLow,xOffsetTemp+highTempLen+20,mTempTopOffset,mTextTempLowAmbientPaint);
-                }
-                else
-                {
-                    highTempLen=mTextTempHighPaint.measureText(mWeatherHigh);
-                    lowTempLen=mTextTempLowPaint.measureText(mWeatherLow);
-                    xOffsetTemp=bounds.centerX()-((highTempLen+lowTempLen+20+mWeatherIcon.getWidth()+20)/2);
-                    canvas.drawBitmap(mWeatherIcon,xOffsetTemp,mTempTopOffset-mWeatherIcon.getHeight(),null);
-                    canvas.drawText(mWeatherHigh,xOffsetTemp+mWeatherIcon.getWidth()+20,mTempTopOffset,mTextTempHighPaint);
-                    canvas.drawText(mWeatherLow,xOffsetTemp+mWeatherIcon.getWidth()+20+highTempLen+20,mTempTopOffset,mTextTempLowPaint);
-                }
+        /**
+         * Picks the time strings for the given local minute and measures them, unless that's
+         * already been done for the same minute and settings.
+         */
+        private void updateTimeLayout(long localMinutes, float centerX) {
+            long key = mIs24Hour ? localMinutes : -2 - localMinutes;
+            if (key == mTimeLayoutKey) return;
+            mTimeLayoutKey = key;
+
+            int minuteOfDay = (int) (localMinutes % MINUTES_PER_DAY);
+            int hourOfDay = minuteOfDay / 60;
+            int hour = hourOfDay;
+            if (!mIs24Hour) {
+                hour = hourOfDay % 12;
+                if (hour == 0) hour = 12;
             }
+            mHourText = mHourTexts[hour];
+            mMinuteText = mMinuteTexts[minuteOfDay % 60];
+            mAmPmText = mIs24Hour ? null : hourOfDay < 12 ? mAmText : mPmText;
+
+            float hourTextLen = mTextTimeHoursPaint.measureText(mHourText);
+            float minuteTextLen = mTextTimeMinutesPaint.measureText(mMinuteText);
+            float xOffsetTime = (hourTextLen + minuteTextLen) / 2;
+            if (mAmPmText != null) {
+                xOffsetTime += mTextTimeMinutesPaint.measureText(mAmPmText) / 2;
+            }
+            mHourTextX = centerX - xOffsetTime;
+            mMinuteTextX = mHourTextX + hourTextLen;
+            mAmPmTextX = mMinuteTextX + minuteTextLen;
+        }
+
+        /**
+         * Formats the date line.  Only needed when a layer is redrawn.
+         */
+        private String formatDate(long now) {
+            Resources resources = getResources();
+            mCalendar.setTimeInMillis(now);
+            String dayOfTheWeek = Utility.getDayOfWeekString(resources,
+                    mCalendar.get(Calendar.DAY_OF_WEEK));
+            String monthOfTheYear = Utility.getMonthOfYearString(resources,
+                    mCalendar.get(Calendar.MONTH));
+            int dayOfMonth = mCalendar.get(Calendar.DAY_OF_MONTH);
+            int year = mCalendar.get(Calendar.YEAR);
+            return String.format("%s, %s %d %d", dayOfTheWeek, monthOfTheYear, dayOfMonth, year);
         }
 
         /**
@@ -458,7 +601,8 @@ public class MyWatchFace extends CanvasWatchFaceService
          * Handle updating the time periodically in interactive mode.
          */
         private void handleUpdateTimeMessage() {
-            invalidate();
+            mFrameStats.countWakeup();
+            invalidateIfTimeChanged();
             if (shouldTimerBeRunning()) {
                 long timeMs = System.currentTimeMillis();
                 long delayMs = INTERACTIVE_UPDATE_RATE_MS
@@ -481,48 +625,124 @@ public class MyWatchFace extends CanvasWatchFaceService
                     String path = dataEvent.getDataItem().getUri().getPath();
                     Log.d(TAG, "MyPath:" + path);
 
-                    if(path.equals(WEATHER_PATH))
-                    {
-                        if(dataMap.containsKey(KEY_TIME))
-                            Log.d(TAG,"TIME:"+dataMap.getString(KEY_TIME));
+                    if(path.equals(WearForecast.PATH))
+                        showPayload(dataMap.getByteArray(WearForecast.KEY_PAYLOAD));
+                }
+            }
+        }
 
-                        if(dataMap.containsKey(KEY_HIGH))
-                        {
-                            mWeatherHigh=dataMap.getString(KEY_HIGH);
-                            Log.d(TAG,"High Temp is:"+mWeatherHigh);
-                        }
-                        else
-                        {
-                            Log.d(TAG,"High Temp Not Available");
-                        }
+        @Override
+        public void onMessageReceived(MessageEvent messageEvent)
+        {
+            // The phone's answer to a refresh request
+            if(messageEvent.getPath().equals(WearForecast.PATH))
+            {
+                Log.d(TAG,"Refreshed by phone");
+                showPayload(messageEvent.getData());
+            }
+        }
 
-                        if (dataMap.containsKey(KEY_LOW))
-                        {
-                            mWeatherLow=dataMap.getString(KEY_LOW);
-                            Log.d(TAG,"Low Temp is:"+mWeatherLow);
-                        }
-                        else
-                        {
-                            Log.d(TAG,"Low Temp Not Available");
-                        }
+        /**
+         * Stores a forecast payload from the phone and shows today's weather from it.
+         */
+        private void showPayload(final byte[] payload)
+        {
+            WearForecast forecast=WearForecast.fromBytes(payload);
+            if(forecast==null)
+            {
+                Log.d(TAG,"Weather data not readable");
+                return;
+            }
+            AsyncTask.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    ForecastStore.write(MyWatchFace.this,payload);
+                }
+            });
+            mForecast=forecast;
+            mForecastDay=-1;
+            mWeatherHigh=null;
+            mWeatherLow=null;
+            selectForecastDay(System.currentTimeMillis());
+            // In ambient mode the new weather waits for the next time tick
+            if(!mAmbient)
+                invalidate();
+        }
 
-                        if(dataMap.containsKey(KEY_WEATHER_ID))
-                        {
-                            int weatherId=dataMap.getInt(KEY_WEATHER_ID);
-                            Log.d(TAG,"weatherId:"+weatherId);
-                            Drawable b=getResources().getDrawable(Utility.getIconResourceForWeatherCondition(weatherId));
-                            Bitmap icon=((BitmapDrawable)b).getBitmap();
-                            float scaledWidth=(mTextTempHighPaint.getTextSize()/icon.getHeight())*icon.getWidth();
-                            mWeatherIcon=Bitmap.createScaledBitmap(icon,(int)scaledWidth,(int)mTextTempHighPaint.getTextSize(),true);
-                        }
-                        else
+        /**
+         * Asks the phone for its latest forecast, unless the watch asked recently.  Weather the
+         * phone sent while the face wasn't listening is picked up this way, and a new watch
+         * doesn't have to wait for the next sync.
+         */
+        private void requestRefresh()
+        {
+            SharedPreferences prefs=PreferenceManager.getDefaultSharedPreferences(MyWatchFace.this);
+            long now=System.currentTimeMillis();
+            long last=prefs.getLong(PREF_LAST_REFRESH_REQUEST,0);
+            // A clock set backwards doesn't hold requests off
+            if(now>=last && now-last<REFRESH_MIN_INTERVAL_MS)
+                return;
+            prefs.edit().putLong(PREF_LAST_REFRESH_REQUEST,now).apply();
+
+            // Names the forecast held, so the phone only answers with a newer one
+            final byte[] request=WearForecast.createRefreshRequest(mForecast);
+            Wearable.NodeApi.getConnectedNodes(client).setResultCallback(
+                    new ResultCallback<NodeApi.GetConnectedNodesResult>()
+                    {
+                        @Override
+                        public void onResult(NodeApi.GetConnectedNodesResult result)
                         {
-                            Log.d(TAG,"Weather Id Not Available");
+                            if(!client.isConnected())
+                                return;
+                            for(Node node : result.getNodes())
+                            {
+                                Log.d(TAG,"Requesting weather from "+node.getDisplayName());
+                                Wearable.MessageApi.sendMessage(client,node.getId(),
+                                        WearForecast.REFRESH_PATH,request);
+                            }
                         }
-                        invalidate();
-                    }
-                }
+                    });
+        }
+
+        /**
+         * Shows the day of the stored forecast that now falls on, if it isn't shown already.
+         * Once the last stored day has passed nothing is shown rather than an old forecast.
+         * Complications showing the forecast are told when the day rolls over, since they
+         * would otherwise show yesterday's until their next update.
+         */
+        private void selectForecastDay(long now)
+        {
+            int day=mForecast==null ? -1 : mForecast.findDay(now);
+            if(day==mForecastDay)
+                return;
+            // A new payload has been stored already, and that updated them
+            if(mForecastDay>=0)
+                ForecastStore.requestComplicationUpdate(MyWatchFace.this);
+            mForecastDay=day;
+            if(day<0)
+            {
+                mWeatherHigh=null;
+                mWeatherLow=null;
+            }
+            else
+            {
+                showForecastDay(mForecast,day);
             }
+            mAmbientRenderer.setWeather(mWeatherHigh,mWeatherLow,mWeatherId);
+            invalidateLayers();
+        }
+
+        private void showForecastDay(WearForecast forecast,int day)
+        {
+            mWeatherHigh=forecast.formatTemperature(MyWatchFace.this,forecast.getHigh(day));
+            mWeatherLow=forecast.formatTemperature(MyWatchFace.this,forecast.getLow(day));
+            Log.d(TAG,"High Temp is:"+mWeatherHigh+", Low Temp is:"+mWeatherLow);
+
+            // The icon itself comes from the atlas when the layer is drawn
+            mWeatherId=forecast.getWeatherId(day);
+            Log.d(TAG,"weatherId:"+mWeatherId);
         }
 
         //have to be implemented for using GoogleApiClient.ConnectionCallbacks
@@ -531,6 +751,8 @@ public class MyWatchFace extends CanvasWatchFaceService
         {
             Log.d(TAG,"Connected to Google Api Client");
             Wearable.DataApi.addListener(client,Engine.this);
+            Wearable.MessageApi.addListener(client,Engine.this);
+            requestRefresh();
         }
 
         @Override